@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Pre-sized NV21 buffers cycled through {@link android.hardware.Camera#addCallbackBuffer}.
+ * Releasing a frame hands its buffer straight back to the camera.
+ *
+ * <p>A buffer the camera holds is not in use, so releasing its frame again has no effect. It
+ * is in use again once {@link #frameFor(byte[])} hands it out.</p>
+ */
+class CallbackBufferPool extends FramePool {
+
+    /**
+     * Where the buffers go: the camera, or a test.
+     */
+    interface BufferQueue {
+        void addCallbackBuffer(byte[] buffer);
+    }
+
+    /**
+     * Every buffer of the current ring, whether the camera or a consumer has it.
+     */
+    private final ArrayList<Frame> mQueued = new ArrayList<>();
+
+    private BufferQueue mCamera;
+
+    CallbackBufferPool(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * Queues {@link #getCapacity()} buffers of the given preview size on {@code camera}.
+     * Does nothing if they are already there.
+     */
+    synchronized void attach(BufferQueue camera, int width, int height) {
+        if (mCamera == camera && getWidth() == width && getHeight() == height
+                && !mQueued.isEmpty()) {
+            return;
+        }
+        mCamera = null;
+        mQueued.clear();
+        configure(width, height);
+        mCamera = camera;
+        fill();
+    }
+
+    synchronized void detachCamera() {
+        mCamera = null;
+        mQueued.clear();
+    }
+
+    synchronized boolean isAttached() {
+        return mCamera != null;
+    }
+
+    /**
+     * Adds buffers to the camera if there are more than before. If there are fewer, buffers
+     * are taken out of the ring as they come back from consumers.
+     */
+    @Override
+    synchronized void setCapacity(int capacity) {
+        super.setCapacity(capacity);
+        if (mCamera != null) fill();
+    }
+
+    private void fill() {
+        for (int i = mQueued.size(), count = getCapacity(); i < count; i++) {
+            Frame frame = acquire();
+            mQueued.add(frame);
+            queue(frame);
+        }
+    }
+
+    private void queue(Frame frame) {
+        frame.mInUse = false;
+        frame.mRefCount = 0;
+        mCamera.addCallbackBuffer(frame.getData());
+    }
+
+    /**
+     * @return The frame owning {@code data}, now in use, or {@code null} if it is not one of
+     * the buffers currently queued.
+     */
+    synchronized Frame frameFor(byte[] data) {
+        if (data == null) return null;
+        for (int i = 0, count = mQueued.size(); i < count; i++) {
+            Frame frame = mQueued.get(i);
+            if (frame.getData() == data) {
+                frame.mInUse = true;
+                frame.mRefCount = 1;
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    void onRecycle(Frame frame) {
+        if (mCamera == null || !mQueued.contains(frame)) {
+            super.onRecycle(frame);
+        } else if (mQueued.size() > getCapacity()) {
+            // The ring was made smaller
+            mQueued.remove(frame);
+        } else {
+            queue(frame);
+        }
+    }
+
+    @Override
+    synchronized byte[] detach(Frame frame, int length) {
+        // The camera needs its buffer back, so the caller gets a copy
+        byte[] data = Arrays.copyOf(frame.getData(), length);
+        recycle(frame);
+        return data;
+    }
+
+}
@@ -27,6 +27,8 @@ import android.util.Log;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
@@ -52,6 +54,26 @@ class Camera1 extends CameraViewImpl {
 
     private final AtomicBoolean isPictureCaptureInProgress = new AtomicBoolean(false);
 
+    /**
+     * The burst being taken, if any. Used on the thread the camera calls back on.
+     */
+    private PictureBurst mBurst;
+
+    private long mShutterNanos;
+
+    /**
+     * Whether continuous focus has settled, as last reported by the camera.
+     */
+    private volatile boolean mFocusConverged;
+
+    private final Camera.AutoFocusMoveCallback mAutoFocusMoveCallback =
+            new Camera.AutoFocusMoveCallback() {
+                @Override
+                public void onAutoFocusMoving(boolean start, Camera camera) {
+                    mFocusConverged = !start;
+                }
+            };
+
     private Camera mCamera;
     private Camera.Parameters mCameraParameters;
 
@@ -109,13 +131,14 @@ class Camera1 extends CameraViewImpl {
     @Override
     void stop() {
         orientation.stopListening();
-        latestFrameWidth = 0;
-        latestFrameHeight = 0;
         stopBackgroundThread();
         if (mCamera != null) {
             mCamera.stopPreview();
         }
         mShowingPreview = false;
+        mBurst = null;
+        isPictureCaptureInProgress.set(false);
+        dropPictures(new IllegalStateException("The camera was stopped"));
         releaseCamera();
     }
 
@@ -141,31 +164,134 @@ class Camera1 extends CameraViewImpl {
         }
     }
 
-    private byte[] latestFrameData;
-    private int latestFrameWidth;
-    private int latestFrameHeight;
+    private final CallbackBufferPool mCallbackBuffers = new CallbackBufferPool(frameBufferCount);
+
+    /**
+     * Hands callback buffers to the open camera. Frames may be released on any thread.
+     */
+    private final CallbackBufferPool.BufferQueue mCameraBufferQueue = new CallbackBufferPool.BufferQueue() {
+        @Override
+        public void addCallbackBuffer(byte[] buffer) {
+            Camera camera = mCamera;
+            if (camera != null) camera.addCallbackBuffer(buffer);
+        }
+    };
+
+    /**
+     * Scratch list of the frame consumers due for the current frame. Used on the thread that
+     * receives preview callbacks only.
+     */
+    private final List<FrameFanOut.Consumer> mSelectedFrameConsumers = new ArrayList<>();
+
+    /**
+     * Scratch list like {@link #mSelectedFrameConsumers}, for frames turned upright on the
+     * frame listener thread.
+     */
+    private final List<FrameFanOut.Consumer> mUprightFrameConsumers = new ArrayList<>();
+
+    /**
+     * Camera buffers waiting to be turned upright. Only the latest is kept.
+     */
+    private final FrameDispatcher mUnrotatedFrames = new FrameDispatcher(new FrameDispatcher.Callback() {
+        @Override
+        public void onFrame(Frame frame) {
+            List<FrameFanOut.Consumer> consumers = mUprightFrameConsumers;
+            boolean primary = selectFrameReceivers(System.nanoTime(), consumers);
+            Handler frameHandler = mFrameHandler;
+            if ((!primary && consumers.isEmpty()) || frameHandler == null) {
+                consumers.clear();
+                frame.release();
+                return;
+            }
+            long start = System.nanoTime();
+            Frame upright = rotateUpright(frame.getData(), frame.getWidth(), frame.getHeight(),
+                    frame.getRotationDegrees(), frameFormat);
+            FrameMetadata arrival = frame.getMetadata();
+            stampFrame(upright.getMetadata(), arrival.getSequenceNumber(), arrival.getTimestamp(),
+                    arrival.getArrivalNanos(), System.nanoTime() - start);
+            frame.release();
+            // Never block: the frame listener drains on this very thread
+            deliverFrame(upright, primary, consumers, false, frameHandler);
+        }
+    });
+
+    private final Runnable mUnrotatedFramesDrainer = new Runnable() {
+        @Override
+        public void run() {
+            mUnrotatedFrames.drain();
+        }
+    };
+
+    private final Camera.PreviewCallback mPreviewCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            Frame frame = mCallbackBuffers.frameFor(data);
+            if (frame == null) return; // Not one of ours, or left over from another preview size
+            long arrivalNanos = System.nanoTime();
+            long sequence = nextFrameSequence();
+            Handler frameHandler = mFrameHandler;
+            if (isPictureCaptureInProgress.get() || frameHandler == null) {
+                frame.release();
+                return;
+            }
+            frame.setRotationDegrees(getRotationDegrees());
+            if (uprightFrames) {
+                // Stamped for good once rotated
+                frame.getMetadata().set(sequence, 0, arrivalNanos, arrivalNanos, 0);
+                // Rotation takes milliseconds; do it on the frame listener thread
+                if (mUnrotatedFrames.offer(frame, false)) {
+                    frameHandler.post(mUnrotatedFramesDrainer);
+                }
+                return;
+            }
+            List<FrameFanOut.Consumer> consumers = mSelectedFrameConsumers;
+            boolean primary = selectFrameReceivers(System.nanoTime(), consumers);
+            if (!primary && consumers.isEmpty()) {
+                frame.release();
+                return;
+            }
+            long conversionNanos = 0;
+            if (usesDirectFrames()) {
+                // The camera only fills arrays; one copy, and its buffer goes straight back
+                long start = System.nanoTime();
+                Frame direct = copyToDirectFrame(frame);
+                frame.release();
+                frame = direct;
+                conversionNanos = System.nanoTime() - start;
+            } else {
+                // The camera hands out finished NV21; the pyramid and statistics are built off
+                // this thread by the first consumer that reads them
+                frame.preparePyramidLazily(framePyramidLevels);
+                prepareFrameStatistics(frame, true);
+            }
+            // No sensor time on Camera1
+            stampFrame(frame.getMetadata(), sequence, arrivalNanos, arrivalNanos,
+                    conversionNanos);
+            // This is the thread that opened the camera, so never block it. A full buffer ring
+            // already holds the camera back.
+            deliverFrame(frame, primary, consumers, false, frameHandler);
+        }
+    };
+
+    /**
+     * @return A pooled direct frame of the frame format holding the data of {@code frame}.
+     */
+    private Frame copyToDirectFrame(Frame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        framePool.configure(width, height, frameFormat, true);
+        Frame direct = framePool.acquire();
+        direct.getBuffer().put(frame.getData(), 0, Frame.dataSize(width, height, frameFormat));
+        direct.setRotationDegrees(frame.getRotationDegrees());
+        prepareFrameStatistics(direct, false);
+        return direct;
+    }
+
     void setupPreviewCallback () {
+        if (!hasFrameReceiver()) return;
         try {
-            mCamera.setPreviewCallback(new Camera.PreviewCallback() {
-                @Override
-                public void onPreviewFrame(final byte[] data, final Camera camera) {
-                    if (data == null || isPictureCaptureInProgress.get() || mFrameHandler == null) return;
-                    if (onFrameCallback != null)  {
-                        latestFrameData = data;
-                        if (latestFrameWidth == 0) latestFrameWidth = camera.getParameters().getPreviewSize().width;
-                        if (latestFrameHeight == 0)latestFrameHeight = camera.getParameters().getPreviewSize().height;
-                        mFrameHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                onFrameCallback.onFrame(latestFrameData,
-                                        latestFrameWidth,
-                                        latestFrameHeight,
-                                        getRotationDegrees());
-                            }
-                        });
-                    }
-                }
-            });
+            mCallbackBuffers.attach(mCameraBufferQueue, mPreviewSizeSelected.getWidth(), mPreviewSizeSelected.getHeight());
+            mCamera.setPreviewCallbackWithBuffer(mPreviewCallback);
         } catch (final Exception e) {
             if (BuildConfig.DEBUG) e.printStackTrace();
             if (cameraErrorCallback != null) {
@@ -179,6 +305,26 @@ class Camera1 extends CameraViewImpl {
         }
     }
 
+    @Override
+    protected void onFrameReceiversChanged() {
+        if (mCamera == null || mPreviewSizeSelected == null || !mPreview.isReady()) return;
+        if (hasFrameReceiver()) {
+            if (!mCallbackBuffers.isAttached()) {
+                setupPreviewCallback();
+            }
+        } else if (mCallbackBuffers.isAttached()) {
+            // Also clears the camera's buffer queue, so the camera stops copying frames
+            mCamera.setPreviewCallbackWithBuffer(null);
+            mCallbackBuffers.detachCamera();
+        }
+    }
+
+    @Override
+    public void setFrameBufferCount(int frameBufferCount) {
+        super.setFrameBufferCount(frameBufferCount);
+        mCallbackBuffers.setCapacity(this.frameBufferCount);
+    }
+
     @Override
     boolean isCameraOpened() {
         return mCamera != null;
@@ -271,16 +417,59 @@ class Camera1 extends CameraViewImpl {
     }
 
     @Override
-    void takePicture() {
+    void takePicture(PictureWriter writer) {
         if (!isCameraOpened()) {
-            throw new IllegalStateException(
+            IllegalStateException e = new IllegalStateException(
                     "Camera is not ready. Call start() before takePicture().");
+            if (writer == null) throw e;
+            refusePicture(writer, e);
+            return;
         }
-        if (getAutoFocus()) {
+        if (mBurst != null) {
+            reportBurstInProgress(writer);
+            return;
+        }
+        if (hasPendingPicture() || isPictureCaptureInProgress.get()) {
+            refusePicture(writer, new IllegalStateException("A picture is being taken"));
+            return;
+        }
+        acceptPicture(writer);
+        onShutterPressed();
+        focusAndTakePicture();
+    }
+
+    /**
+     * Takes the shots one after the other, each started as soon as the previous picture is in
+     * and before that picture is handed out, with focus and exposure locked once.
+     */
+    @Override
+    void takeBurst(int count, long intervalMillis) {
+        if (!isCameraOpened()) {
+            throw new IllegalStateException(
+                    "Camera is not ready. Call start() before takeBurst().");
+        }
+        if (count <= 0) return;
+        if (mBurst != null || hasPendingPicture() || isPictureCaptureInProgress.get()) {
+            reportBurstInProgress(null);
+            return;
+        }
+        mBurst = new PictureBurst(count, intervalMillis);
+        onShutterPressed();
+        setExposureLocked(true);
+        focusAndTakePicture();
+    }
+
+    /**
+     * Focuses first, unless {@link #fastCapture} is on and continuous focus has settled.
+     * Camera1 reports no exposure state, so that is not waited for.
+     */
+    private void focusAndTakePicture() {
+        if (getAutoFocus() && !(fastCapture && mFocusConverged)) {
             mCamera.cancelAutoFocus();
             mCamera.autoFocus(new Camera.AutoFocusCallback() {
                 @Override
                 public void onAutoFocus(boolean success, Camera camera) {
+                    mFocusConverged = success;
                     takePictureInternal();
                 }
             });
@@ -293,25 +482,53 @@ class Camera1 extends CameraViewImpl {
         stopBackgroundThread();
         try {
             if (!isPictureCaptureInProgress.getAndSet(true)) {
+                if (mBurst != null) mBurst.startShot(System.nanoTime());
                 mCamera.takePicture(new Camera.ShutterCallback() {
                     @Override
                     public void onShutter() {
+                        mShutterNanos = System.nanoTime();
+                        onCaptureStarted();
                         if (focusLockedCallback != null) focusLockedCallback.onFocusLocked();
                     }
                 }, null, null, new Camera.PictureCallback() {
                     @Override
                     public void onPictureTaken(byte[] data, Camera camera) {
                         isPictureCaptureInProgress.set(false);
-                        if (pictureBytesCallback != null) pictureBytesCallback.onPictureBytesAvailable(data, getRotationDegrees());
-                        byteArrayToBitmap(data);
-                        camera.cancelAutoFocus();
-                        camera.startPreview();
-                        startBackgroundThread();
+                        long timestamp = mShutterNanos;
+                        int burstIndex = 0;
+                        int burstSize = 1;
+                        PictureBurst burst = mBurst;
+                        if (burst != null) {
+                            burst.shotCompleted(false);
+                            burstIndex = burst.nextDelivery();
+                            burstSize = burst.getSize();
+                        }
+                        if (burst != null && burst.hasShotsToStart()) {
+                            // The next shot is taken while this one is handed out
+                            camera.startPreview();
+                            takeNextShot(burst);
+                        } else {
+                            if (burst != null) {
+                                mBurst = null;
+                                setExposureLocked(false);
+                            }
+                            camera.cancelAutoFocus();
+                            camera.startPreview();
+                            startBackgroundThread();
+                        }
+                        deliverPicture(data, timestamp, burst, burstIndex, burstSize);
                     }
                 });
             }
         } catch (final Exception e) {
             if (BuildConfig.DEBUG) e.printStackTrace();
+            isPictureCaptureInProgress.set(false);
+            if (mBurst != null) {
+                mBurst = null;
+                setExposureLocked(false);
+            } else {
+                dropPicture(e);
+            }
             if (cameraErrorCallback != null) {
                 mPreview.getView().post(new Runnable() {
                     @Override
@@ -324,6 +541,57 @@ class Camera1 extends CameraViewImpl {
         }
     }
 
+    /**
+     * Takes the next shot of {@code burst} once it is due.
+     */
+    private void takeNextShot(final PictureBurst burst) {
+        long delayMillis = burst.getDelayNanos(System.nanoTime()) / 1000000L;
+        if (delayMillis == 0) {
+            takePictureInternal();
+            return;
+        }
+        mPreview.getView().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                // Unless the camera was stopped meanwhile
+                if (mBurst == burst && isCameraOpened()) takePictureInternal();
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * @param burst The burst {@code data} was taken for, or {@code null}. Shots of a burst
+     *              always go to the picture listeners.
+     */
+    private void deliverPicture(byte[] data, long timestamp, PictureBurst burst, int burstIndex,
+                                int burstSize) {
+        if (burst == null && savePicture(ByteBuffer.wrap(data), null)) return;
+        int rotationDegrees = getRotationDegrees();
+        if (pictureBytesCallback != null) pictureBytesCallback.onPictureBytesAvailable(data, rotationDegrees);
+        byteArrayToBitmap(data, burstSize);
+        if (pictureBufferCallback != null) {
+            pictureBufferCallback.onPictureBufferAvailable(new PictureBuffer(ByteBuffer.wrap(data),
+                    rotationDegrees, timestamp, burstIndex, burstSize, null));
+        }
+    }
+
+    /**
+     * Keeps the exposure of the first shot of a burst for the others, where supported.
+     */
+    private void setExposureLocked(boolean locked) {
+        try {
+            if (!mCameraParameters.isAutoExposureLockSupported()) return;
+            mCameraParameters.setAutoExposureLock(locked);
+            mCamera.setParameters(mCameraParameters);
+        } catch (RuntimeException e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+        }
+    }
+
+    private void reportBurstInProgress(PictureWriter writer) {
+        refusePicture(writer, new IllegalStateException("A burst of pictures is being taken"));
+    }
+
     @Override
     void setDisplayOrientation(int displayOrientation) {
         try {
@@ -378,6 +646,8 @@ class Camera1 extends CameraViewImpl {
                 releaseCamera();
             }
             mCamera = Camera.open(mCameraId);
+            mFocusConverged = false;
+            mCamera.setAutoFocusMoveCallback(mAutoFocusMoveCallback);
             mCameraParameters = mCamera.getParameters();
             // Supported preview sizes
             mPreviewSizes.clear();
@@ -436,6 +706,8 @@ class Camera1 extends CameraViewImpl {
                 sizes = mPreviewSizes.sizes(mAspectRatio);
             }
             mPreviewSizeSelected = chooseOptimalSize(sizes);
+            // Frames come from the preview stream itself
+            mFrameSizeSelected = mPreviewSizeSelected;
 
             // Always re-apply camera parameters
             // Largest picture size in this ratio
@@ -449,6 +721,10 @@ class Camera1 extends CameraViewImpl {
             setAutoFocusInternal(mAutoFocus);
             setFlashInternal(mFlash);
             mCamera.setParameters(mCameraParameters);
+            if (mCallbackBuffers.isAttached()) {
+                // Callback buffers must match the new preview size
+                mCallbackBuffers.attach(mCameraBufferQueue, mPreviewSizeSelected.getWidth(), mPreviewSizeSelected.getHeight());
+            }
             if (mShowingPreview) {
                 mCamera.startPreview();
             }
@@ -494,7 +770,8 @@ class Camera1 extends CameraViewImpl {
 
     private void releaseCamera() {
         if (mCamera != null) {
-            mCamera.setPreviewCallback(null);
+            mCamera.setPreviewCallbackWithBuffer(null);
+            mCallbackBuffers.detachCamera();
             mCamera.release();
             mCamera = null;
         }
@@ -638,6 +915,10 @@ class Camera1 extends CameraViewImpl {
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        // Give frames that never reached the frame thread back to the camera
+        frameDispatcher.clear();
+        frameConsumers.clear();
+        mUnrotatedFrames.clear();
     }
 
     @Override
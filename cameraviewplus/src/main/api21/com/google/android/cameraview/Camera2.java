@@ -25,6 +25,7 @@ import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
@@ -40,9 +41,13 @@ import android.view.MotionEvent;
 import android.view.Surface;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("MissingPermission")
 @TargetApi(21)
@@ -67,6 +72,11 @@ class Camera2 extends CameraViewImpl {
      */
     private static final int MAX_PREVIEW_HEIGHT = 1080;
 
+    /**
+     * How long closing the JPEG reader waits for pictures still being written from it.
+     */
+    private static final long PICTURE_WRITE_TIMEOUT_MS = 2000;
+
     private final CameraManager mCameraManager;
 
     private final CameraDevice.StateCallback mCameraDeviceCallback
@@ -104,6 +114,13 @@ class Camera2 extends CameraViewImpl {
                 return;
             }
             mCaptureSession = session;
+            mCaptureCallback.reset3aState();
+            abortBurst("The capture session was restarted during a burst");
+            if (!updateFrameTarget()) {
+                // A frame listener came while the session was being configured
+                restartCaptureSession();
+                return;
+            }
             updateAutoFocus();
             updateFlash();
             try {
@@ -120,11 +137,21 @@ class Camera2 extends CameraViewImpl {
                     });
                 }
             }
+            if (mCaptureAfterConfigure) {
+                mCaptureAfterConfigure = false;
+                startPictureCapture();
+            } else {
+                // Whatever was being taken went with the previous session
+                dropPictures(new IllegalStateException("The capture session was restarted"));
+            }
         }
 
         @Override
         public void onConfigureFailed(@NonNull CameraCaptureSession session) {
             Log.e(TAG, "Failed to configure capture session.");
+            mCaptureAfterConfigure = false;
+            abortBurst("Failed to configure capture session during a burst");
+            dropPictures(new IllegalStateException("Failed to configure capture session"));
         }
 
         @Override
@@ -149,6 +176,7 @@ class Camera2 extends CameraViewImpl {
                         CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
             } catch (final Exception e) {
                 if (BuildConfig.DEBUG) e.printStackTrace();
+                if (mBurst == null) dropPicture(e);
                 if (cameraErrorCallback != null) {
                     mPreview.getView().post(new Runnable() {
                         @Override
@@ -162,7 +190,11 @@ class Camera2 extends CameraViewImpl {
 
         @Override
         public void onReady() {
-            captureStillPicture();
+            if (mBurst != null) {
+                captureBurst();
+            } else {
+                captureStillPicture();
+            }
         }
 
     };
@@ -172,55 +204,274 @@ class Camera2 extends CameraViewImpl {
 
         @Override
         public void onImageAvailable(ImageReader reader) {
-            try (Image image = reader.acquireNextImage()) {
+            final Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (final IllegalStateException e) {
+                // Every image is held by the app through a PictureBuffer
+                if (BuildConfig.DEBUG) e.printStackTrace();
+                PictureBurst burst = mBurst;
+                if (burst == null) {
+                    dropPicture(e);
+                } else {
+                    // Counted as delivered, or the burst would never finish
+                    burst.nextDelivery();
+                    if (burst.isFinished()) mBurst = null;
+                }
+                if (cameraErrorCallback != null) {
+                    mPreview.getView().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            cameraErrorCallback.onCameraError(e);
+                        }
+                    });
+                }
+                return;
+            }
+            if (image == null) return;
+            boolean handedOut = false;
+            try {
                 Image.Plane[] planes = image.getPlanes();
                 if (planes.length > 0) {
                     ByteBuffer buffer = planes[0].getBuffer();
-                    byte[] data = new byte[buffer.capacity()];
-                    buffer.get(data);
-                    byteArrayToBitmap(data);
-                    if (pictureBytesCallback != null) pictureBytesCallback.onPictureBytesAvailable(data, getRotationDegrees());
+                    PictureBurst burst = mBurst;
+                    // Written from the image itself, which is closed afterwards. Shots of a
+                    // burst always go to the picture listeners.
+                    beginPictureWrite();
+                    handedOut = burst == null && savePicture(buffer, new AutoCloseable() {
+                        @Override
+                        public void close() {
+                            image.close();
+                            endPictureWrite();
+                        }
+                    });
+                    if (!handedOut) endPictureWrite();
+                    if (!handedOut) {
+                        int rotationDegrees = getRotationDegrees();
+                        int burstIndex = 0;
+                        int burstSize = 1;
+                        if (burst != null) {
+                            burstIndex = burst.nextDelivery();
+                            burstSize = burst.getSize();
+                            if (burst.isFinished()) mBurst = null;
+                        }
+                        if (pictureCallback != null || pictureBytesCallback != null) {
+                            byte[] data = new byte[buffer.remaining()];
+                            buffer.duplicate().get(data);
+                            byteArrayToBitmap(data, burstSize);
+                            if (pictureBytesCallback != null) pictureBytesCallback.onPictureBytesAvailable(data, rotationDegrees);
+                        }
+                        if (pictureBufferCallback != null) {
+                            handedOut = true;
+                            pictureBufferCallback.onPictureBufferAvailable(new PictureBuffer(buffer,
+                                    rotationDegrees, image.getTimestamp(), burstIndex, burstSize, image));
+                        }
+                    }
                 }
-                image.close();
+            } finally {
+                if (!handedOut) image.close();
             }
         }
     };
-    private byte[] latestFrameData;
-    private int latestFrameWidth;
-    private int latestFrameHeight;
+    private byte[] mFrameRowData;
+
+    private StripedYuvConverter mStripedConverter;
+
+    /**
+     * Scratch list of the frame consumers due for the current frame. Used on
+     * {@link #mFrameThread} only.
+     */
+    private final List<FrameFanOut.Consumer> mSelectedFrameConsumers = new ArrayList<>();
+
+    /**
+     * Holds a frame before it is turned upright. Used on {@link #mFrameThread} only.
+     */
+    private byte[] mUnrotatedData;
+
+    /**
+     * Frame images announced to {@link #mOnFrameAvailableListener} and not taken yet.
+     */
+    private final AtomicInteger mPendingFrameImages = new AtomicInteger();
+
+    /**
+     * When the latest frame image was announced.
+     */
+    private volatile long mFrameArrivalNanos;
+
     private final ImageReader.OnImageAvailableListener mOnFrameAvailableListener
             = new ImageReader.OnImageAvailableListener() {
         @Override
         public void onImageAvailable(final ImageReader reader) {
             if (mFrameHandler == null) return;
+            mFrameArrivalNanos = System.nanoTime();
+            mPendingFrameImages.incrementAndGet();
             mFrameHandler.post(new Runnable() {
                 @Override
                 public void run() {
-                    final Image image = reader.acquireNextImage();
-                    if (image == null) return;
+                    // A blocking policy takes every frame in turn; otherwise only the latest
+                    // of those waiting is worth the work
+                    boolean inOrder = frameDispatcher.getPolicy().getMode()
+                            == FrameDeliveryPolicy.MODE_BLOCK_PRODUCER;
+                    int arrived = takePendingFrameImages(inOrder);
+                    if (arrived == 0) return; // Already taken along with an earlier one
+                    long arrivalNanos = mFrameArrivalNanos;
+                    long sequence = nextFrameSequence(arrived);
+                    List<FrameFanOut.Consumer> consumers = mSelectedFrameConsumers;
+                    boolean primary = selectFrameReceivers(System.nanoTime(), consumers);
+                    Image image = null;
                     try {
-                        if (onFrameCallback != null) {
-                            latestFrameData = Utils.YUV420toNV21(image);
-                            latestFrameWidth = image.getWidth();
-                            latestFrameHeight = image.getHeight();
-                            mFrameProcessHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    onFrameCallback.onFrame(latestFrameData,
-                                            latestFrameWidth,
-                                            latestFrameHeight,
-                                            getRotationDegrees());
-                                }
-                            });
+                        if (primary) {
+                            try {
+                                frameDispatcher.awaitCapacity();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                        image = acquireFrameImage(reader, inOrder, arrived);
+                        if (image == null) return;
+                        if (!primary && consumers.isEmpty()) {
+                            // Skipped before any conversion work
+                            return;
+                        }
+                        OnPlanarFrameListener planarFrameListener = primary ? planarFrameCallback : null;
+                        Handler frameProcessHandler = mFrameProcessHandler;
+                        boolean convert = primary && planarFrameListener == null
+                                && frameProcessHandler != null;
+                        long timestamp = image.getTimestamp();
+                        if (convert || !consumers.isEmpty()) {
+                            long start = System.nanoTime();
+                            Frame frame = convertFrame(image);
+                            stampFrame(frame.getMetadata(), sequence, timestamp, arrivalNanos,
+                                    System.nanoTime() - start);
+                            deliverFrame(frame, convert, consumers, true, frameProcessHandler);
+                        }
+                        if (planarFrameListener != null) {
+                            // Zero copy: the listener reads the image planes and closes the image
+                            Image planarImage = image;
+                            image = null;
+                            FrameMetadata metadata = new FrameMetadata();
+                            stampFrame(metadata, sequence, timestamp, arrivalNanos, 0);
+                            long start = System.nanoTime();
+                            planarFrameListener.onPlanarFrame(new PlanarFrame(planarImage,
+                                    getRotationDegrees(), metadata));
+                            frameRateLimiter.onProcessed(System.nanoTime() - start);
                         }
                     } finally {
-                        image.close();
+                        if (image != null) image.close();
+                        consumers.clear();
                     }
                 }
             });
         }
     };
 
+    /**
+     * Takes over the count of frame images waiting in the frame reader.
+     *
+     * @param one Whether to take just one of them.
+     */
+    private int takePendingFrameImages(boolean one) {
+        while (true) {
+            int pending = mPendingFrameImages.get();
+            int taken = one ? Math.min(pending, 1) : pending;
+            if (mPendingFrameImages.compareAndSet(pending, pending - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest waiting image if {@code inOrder}, otherwise the latest, closing the
+     * {@code arrived - 1} older ones as stale. Runs on {@link #mFrameThread}.
+     *
+     * @return The image, or {@code null} if there is none to take. The {@code arrived} images
+     * then count as stale.
+     */
+    private Image acquireFrameImage(ImageReader reader, boolean inOrder, int arrived) {
+        Image image;
+        try {
+            image = inOrder ? reader.acquireNextImage() : reader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            // The planar frame listener holds every image, or the reader is closed
+            staleFrameCount += arrived;
+            return null;
+        }
+        if (image != null) {
+            staleFrameCount += arrived - 1;
+        } else {
+            // An earlier acquireLatestImage closed them before their arrival was counted
+            staleFrameCount += arrived;
+        }
+        return image;
+    }
+
+    /**
+     * Converts {@code image} into a pooled {@link Frame} of the current frame format. Runs on {@link #mFrameThread}.
+     */
+    private Frame convertFrame(Image image) {
+        Rect crop = image.getCropRect();
+        int width = crop.width();
+        int height = crop.height();
+        int format = frameFormat;
+        if (uprightFrames) {
+            int size = Frame.dataSize(width, height, format);
+            if (mUnrotatedData == null || mUnrotatedData.length != size) {
+                mUnrotatedData = new byte[size];
+            }
+            convertImage(image, format, mUnrotatedData, null, null);
+            return rotateUpright(mUnrotatedData, width, height, getRotationDegrees(), format);
+        }
+        if (usesDirectFrames()) {
+            framePool.configure(width, height, format, true);
+            Frame frame = framePool.acquire();
+            prepareFrameStatistics(frame, false);
+            // Serial, straight from the image planes into the direct buffer
+            if (mFrameRowData == null || mFrameRowData.length < 3 * width) {
+                mFrameRowData = new byte[3 * width];
+            }
+            if (format == Constants.FRAME_FORMAT_LUMA) {
+                Utils.YUV420toLuma(image, frame.getBuffer(), mFrameRowData);
+            } else {
+                Utils.YUV420toNV21(image, frame.getBuffer(), mFrameRowData);
+            }
+            frame.setRotationDegrees(getRotationDegrees());
+            return frame;
+        }
+        framePool.configure(width, height, format);
+        Frame frame = framePool.acquire();
+        boolean shared = frameAvailableCallback != null || !frameConsumers.isEmpty();
+        // Statistics are gathered during a serial conversion only
+        FrameStatistics statistics = prepareFrameStatistics(frame,
+                convertsInStripes(width, height));
+        convertImage(image, format, frame.getData(),
+                frame.preparePyramid(shared ? framePyramidLevels : 0), statistics);
+        frame.setRotationDegrees(getRotationDegrees());
+        return frame;
+    }
+
+    private boolean convertsInStripes(int width, int height) {
+        return parallelFrameConversion && width * height >= StripedYuvConverter.MIN_PARALLEL_PIXELS;
+    }
+
+    private void convertImage(Image image, int format, byte[] output, byte[][] pyramid,
+                              FrameStatistics statistics) {
+        Rect crop = image.getCropRect();
+        int rowStride = image.getPlanes()[0].getRowStride();
+        if (mFrameRowData == null || mFrameRowData.length < rowStride) {
+            mFrameRowData = new byte[rowStride];
+        }
+        if (convertsInStripes(crop.width(), crop.height())) {
+            if (mStripedConverter == null) {
+                mStripedConverter = new StripedYuvConverter();
+            }
+            int planeCount = format == Constants.FRAME_FORMAT_LUMA ? 1 : image.getPlanes().length;
+            mStripedConverter.convert(image, planeCount, output, pyramid);
+        } else if (format == Constants.FRAME_FORMAT_LUMA) {
+            Utils.YUV420toLuma(image, output, mFrameRowData, pyramid, statistics);
+        } else {
+            Utils.YUV420toNV21(image, output, mFrameRowData, pyramid, statistics);
+        }
+    }
 
     private String mCameraId;
 
@@ -235,10 +486,22 @@ class Camera2 extends CameraViewImpl {
     private ImageReader mImageReader;
     private ImageReader mFrameImageReader;
 
+    /**
+     * Whether the capture session has the frame reader among its outputs, and whether the
+     * preview request fills it.
+     */
+    private boolean mFrameStreamConfigured;
+    private boolean mFrameStreamTargeted;
+
     private final SizeMap mPreviewSizes = new SizeMap();
 
     private final SizeMap mPictureSizes = new SizeMap();
 
+    /**
+     * The YUV sizes the frame stream can use alongside the preview, whatever its size.
+     */
+    private final SizeMap mFrameSizes = new SizeMap();
+
     private int mFacing;
 
     private AspectRatio mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
@@ -251,6 +514,31 @@ class Camera2 extends CameraViewImpl {
     private int mDisplayOrientation;
 
     private Handler mBackgroundHandler;
+
+    /**
+     * The burst being taken, if any. Cleared on the background thread once its last picture
+     * is delivered.
+     */
+    private volatile PictureBurst mBurst;
+
+    private final Object mPictureWriteLock = new Object();
+
+    /**
+     * Pictures being written straight from an image of {@link #mImageReader}. Guarded by
+     * {@link #mPictureWriteLock}.
+     */
+    private int mPictureWrites;
+
+    /**
+     * Whether a picture has been written to a file, so the still reader keeps an image for
+     * the writes.
+     */
+    private boolean mSavesPictures;
+
+    /**
+     * Whether the accepted picture is to be taken once the capture session is configured.
+     */
+    private volatile boolean mCaptureAfterConfigure;
     private HandlerThread mBackgroundThread;
 
     private Handler mFrameHandler;
@@ -295,6 +583,7 @@ class Camera2 extends CameraViewImpl {
             mCamera = null;
         }
         if (mImageReader != null) {
+            awaitPictureWrites();
             mImageReader.close();
             mImageReader = null;
         }
@@ -304,6 +593,9 @@ class Camera2 extends CameraViewImpl {
         }
         stopBackgroundThread();
         resetZoom();
+        mBurst = null;
+        mCaptureAfterConfigure = false;
+        dropPictures(new IllegalStateException("The camera was stopped"));
     }
 
     @Override
@@ -368,6 +660,100 @@ class Camera2 extends CameraViewImpl {
         return true;
     }
 
+    @Override
+    public void setFrameSizePolicy(FrameSizePolicy policy) {
+        if (policy == null || policy.equals(frameSizePolicy)) return;
+        super.setFrameSizePolicy(policy);
+        restartImageReaders();
+    }
+
+    @Override
+    public void setFrameImageCount(int count) {
+        if (count == frameImageCount) return;
+        super.setFrameImageCount(count);
+        restartImageReaders();
+    }
+
+    @Override
+    public void setPictureImageCount(int count) {
+        if (count == pictureImageCount) return;
+        super.setPictureImageCount(count);
+        restartImageReaders();
+    }
+
+    @Override
+    public void setOnPictureBufferAvailableListener(OnPictureBufferAvailableListener bufferCallback) {
+        int imageCount = getPictureReaderImageCount();
+        super.setOnPictureBufferAvailableListener(bufferCallback);
+        if (getPictureReaderImageCount() != imageCount) {
+            restartImageReaders();
+        }
+    }
+
+    /**
+     * @return The still images to allocate: one more than asked for while pictures can be held
+     * by the app or by a write.
+     */
+    private int getPictureReaderImageCount() {
+        return pictureBufferCallback != null || mSavesPictures
+                ? pictureImageCount + 1 : pictureImageCount;
+    }
+
+    /**
+     * Recreates the image readers with the current settings, and the capture session with
+     * them if it is running.
+     */
+    private void restartImageReaders() {
+        if (mFrameImageReader == null) return;
+        prepareImageReader();
+        if (mCaptureSession != null) {
+            restartCaptureSession();
+        }
+    }
+
+    private void restartCaptureSession() {
+        mCaptureSession.close();
+        mCaptureSession = null;
+        startCaptureSession();
+    }
+
+    @Override
+    protected void onFrameReceiversChanged() {
+        // Without a session yet, onConfigured catches up
+        if (mCaptureSession == null || hasFrameReceiver() == mFrameStreamTargeted) return;
+        if (!updateFrameTarget()) {
+            // Only a new session can add the frame stream
+            restartCaptureSession();
+            return;
+        }
+        try {
+            mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
+                    mCaptureCallback, mBackgroundHandler);
+        } catch (CameraAccessException e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+        }
+    }
+
+    /**
+     * Makes the preview request fill the frame reader only while somebody wants frames.
+     *
+     * @return {@code false} if frames are wanted but the session was configured without the
+     * frame stream.
+     */
+    private boolean updateFrameTarget() {
+        boolean frames = hasFrameReceiver();
+        if (frames && !mFrameStreamConfigured) return false;
+        if (mFrameImageReader == null) return true;
+        Surface frameSurface = mFrameImageReader.getSurface();
+        if (frames) {
+            mPreviewRequestBuilder.addTarget(frameSurface);
+        } else {
+            mPreviewRequestBuilder.removeTarget(frameSurface);
+        }
+        mFrameStreamTargeted = frames;
+        return true;
+    }
+
     @Override
     AspectRatio getAspectRatio() {
         return mAspectRatio;
@@ -424,14 +810,72 @@ class Camera2 extends CameraViewImpl {
     }
 
     @Override
-    void takePicture() {
-        if (mAutoFocus) {
+    void takePicture(PictureWriter writer) {
+        if (mBurst != null) {
+            reportBurstInProgress(writer);
+            return;
+        }
+        if (mCaptureSession == null) {
+            refusePicture(writer, new IllegalStateException("Camera is not ready"));
+            return;
+        }
+        if (hasPendingPicture()) {
+            refusePicture(writer, new IllegalStateException("A picture is being taken"));
+            return;
+        }
+        acceptPicture(writer);
+        onShutterPressed();
+        if (writer != null && !mSavesPictures) {
+            // The write holds its image, so the next picture needs another one. The first
+            // picture saved waits for the session to restart with it.
+            int imageCount = getPictureReaderImageCount();
+            mSavesPictures = true;
+            if (getPictureReaderImageCount() != imageCount) {
+                mCaptureAfterConfigure = true;
+                restartImageReaders();
+                return;
+            }
+        }
+        startPictureCapture();
+    }
+
+    private void startPictureCapture() {
+        if (mAutoFocus && !canSkipFocusLock()) {
             lockFocus();
         } else {
             captureStillPicture();
         }
     }
 
+    /**
+     * @return Whether {@link #fastCapture} lets the picture be taken without locking focus and
+     * running the precapture sequence, because the preview reports both settled. An always-on
+     * flash still needs the precapture sequence to meter it.
+     */
+    private boolean canSkipFocusLock() {
+        return fastCapture && mFlash != Constants.FLASH_ON && mCaptureCallback.isConverged();
+    }
+
+    @Override
+    void takeBurst(int count, long intervalMillis) {
+        if (count <= 0) return;
+        if (mBurst != null || hasPendingPicture()) {
+            reportBurstInProgress(null);
+            return;
+        }
+        mBurst = new PictureBurst(count, intervalMillis);
+        onShutterPressed();
+        if (mAutoFocus && !canSkipFocusLock()) {
+            lockFocus();
+        } else {
+            captureBurst();
+        }
+    }
+
+    private void reportBurstInProgress(PictureWriter writer) {
+        refusePicture(writer, new IllegalStateException("A burst of pictures is being taken"));
+    }
+
     @Override
     void setDisplayOrientation(int displayOrientation) {
         mDisplayOrientation = displayOrientation;
@@ -535,6 +979,12 @@ class Camera2 extends CameraViewImpl {
                 }
             }
         }
+        mFrameSizes.clear();
+        for (android.util.Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+            if (size.getWidth() <= MAX_PREVIEW_WIDTH && size.getHeight() <= MAX_PREVIEW_HEIGHT) {
+                mFrameSizes.add(new Size(size.getWidth(), size.getHeight()));
+            }
+        }
         mPictureSizes.clear();
         collectPictureSizes(mPictureSizes, map);
         for (AspectRatio ratio : mPreviewSizes.ratios()) {
@@ -561,6 +1011,7 @@ class Camera2 extends CameraViewImpl {
 
     private void prepareImageReader() {
         if (mImageReader != null) {
+            awaitPictureWrites();
             mImageReader.close();
         }
         if (mFrameImageReader != null) {
@@ -568,10 +1019,12 @@ class Camera2 extends CameraViewImpl {
         }
         mPictureSizeSelected = mPictureSizes.sizes(mAspectRatio).last();
         mImageReader = ImageReader.newInstance(mPictureSizeSelected.getWidth(), mPictureSizeSelected.getHeight(),
-                ImageFormat.JPEG, /* maxImages */ 1);
-        Size previewLargest = mPreviewSizes.sizes(mAspectRatio).last();
-        mFrameImageReader = ImageReader.newInstance(previewLargest.getWidth(), previewLargest.getHeight(),
-                ImageFormat.YUV_420_888, 1);
+                ImageFormat.JPEG, getPictureReaderImageCount());
+        mFrameSizeSelected = chooseFrameSize();
+        mFrameImageReader = ImageReader.newInstance(mFrameSizeSelected.getWidth(), mFrameSizeSelected.getHeight(),
+                ImageFormat.YUV_420_888, frameImageCount);
+        mPendingFrameImages.set(0);
+        framePool.configure(mFrameSizeSelected.getWidth(), mFrameSizeSelected.getHeight());
         mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mBackgroundHandler);
         mFrameImageReader.setOnImageAvailableListener(mOnFrameAvailableListener, mBackgroundHandler);
     }
@@ -610,12 +1063,21 @@ class Camera2 extends CameraViewImpl {
         mPreview.setBufferSize(mPreviewSizeSelected.getWidth(), mPreviewSizeSelected.getHeight());
         Surface surface = mPreview.getSurface();
         Surface frameSurface = mFrameImageReader.getSurface();
+        // The frame stream costs bandwidth and power even if nobody reads it
+        boolean frames = hasFrameReceiver();
         try {
             mPreviewRequestBuilder = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             mPreviewRequestBuilder.addTarget(surface);
-            mPreviewRequestBuilder.addTarget(frameSurface);
-            mCamera.createCaptureSession(Arrays.asList(surface, mImageReader.getSurface(), mFrameImageReader.getSurface()),
-                    mSessionCallback, mBackgroundHandler);
+            List<Surface> outputs = new ArrayList<>(3);
+            outputs.add(surface);
+            outputs.add(mImageReader.getSurface());
+            if (frames) {
+                mPreviewRequestBuilder.addTarget(frameSurface);
+                outputs.add(frameSurface);
+            }
+            mFrameStreamConfigured = frames;
+            mFrameStreamTargeted = frames;
+            mCamera.createCaptureSession(outputs, mSessionCallback, mBackgroundHandler);
         } catch (final Exception e) {
             if (BuildConfig.DEBUG) e.printStackTrace();
             if (cameraErrorCallback != null) {
@@ -657,6 +1119,22 @@ class Camera2 extends CameraViewImpl {
         return candidates.last();
     }
 
+    /**
+     * Chooses the size of the frame stream with {@link #frameSizePolicy}. By default it is the
+     * largest preview size, as limited by {@link #maximumPreviewWidth}; other policies pick
+     * from {@link #mFrameSizes}, independently of the preview.
+     */
+    private Size chooseFrameSize() {
+        SortedSet<Size> candidates = mPreviewSizes.sizes(mAspectRatio);
+        if (frameSizePolicy.getMode() != FrameSizePolicy.MODE_LARGEST) {
+            SortedSet<Size> frameSizes = mFrameSizes.sizes(mAspectRatio);
+            if (frameSizes != null) {
+                candidates = frameSizes;
+            }
+        }
+        return frameSizePolicy.select(candidates);
+    }
+
     /**
      * Updates the internal state of auto-focus to {@link #mAutoFocus}.
      */
@@ -729,6 +1207,7 @@ class Camera2 extends CameraViewImpl {
             mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, mBackgroundHandler);
         } catch (final Exception e) {
             if (BuildConfig.DEBUG) e.printStackTrace();
+            if (mBurst == null) dropPicture(e);
             if (cameraErrorCallback != null) {
                 mPreview.getView().post(new Runnable() {
                     @Override
@@ -740,69 +1219,98 @@ class Camera2 extends CameraViewImpl {
         }
     }
 
+    /**
+     * @return A still capture request with the current focus mode, zoom and flash.
+     */
+    private CaptureRequest.Builder createStillRequest() throws CameraAccessException {
+        CaptureRequest.Builder captureRequestBuilder = mCamera.createCaptureRequest(
+                CameraDevice.TEMPLATE_STILL_CAPTURE);
+        captureRequestBuilder.addTarget(mImageReader.getSurface());
+        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+                mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
+        if (zoom != null) {
+            captureRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoom);
+        }
+        switch (mFlash) {
+            case Constants.FLASH_OFF:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON);
+                captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
+                        CaptureRequest.FLASH_MODE_OFF);
+                break;
+            case Constants.FLASH_ON:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
+                break;
+            case Constants.FLASH_TORCH:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON);
+                captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
+                        CaptureRequest.FLASH_MODE_TORCH);
+                break;
+            case Constants.FLASH_AUTO:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
+                break;
+            case Constants.FLASH_RED_EYE:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
+                break;
+        }
+        return captureRequestBuilder;
+    }
+
+    private void notifyFocusLocked() {
+        //Call Activity to do things when focus is locked
+        if (focusLockedCallback != null) {
+            mPreview.getView().post(new Runnable() {
+                @Override
+                public void run() {
+                    focusLockedCallback.onFocusLocked();
+                }
+            });
+        }
+    }
+
     /**
      * Captures a still picture.
      */
     void captureStillPicture() {
         try {
-            CaptureRequest.Builder captureRequestBuilder = mCamera.createCaptureRequest(
-                    CameraDevice.TEMPLATE_STILL_CAPTURE);
-            captureRequestBuilder.addTarget(mImageReader.getSurface());
-            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                    mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
-            if (zoom != null) {
-                captureRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoom);
-            }
-            switch (mFlash) {
-                case Constants.FLASH_OFF:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON);
-                    captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
-                            CaptureRequest.FLASH_MODE_OFF);
-                    break;
-                case Constants.FLASH_ON:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
-                    break;
-                case Constants.FLASH_TORCH:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON);
-                    captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
-                            CaptureRequest.FLASH_MODE_TORCH);
-                    break;
-                case Constants.FLASH_AUTO:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                    break;
-                case Constants.FLASH_RED_EYE:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                    break;
-            }
+            CaptureRequest.Builder captureRequestBuilder = createStillRequest();
             // Stop preview and capture a still picture.
             mCaptureSession.stopRepeating();
 
-            //Call Activity to do things when focus is locked
-            if (focusLockedCallback != null) {
-                mPreview.getView().post(new Runnable() {
-                    @Override
-                    public void run() {
-                        focusLockedCallback.onFocusLocked();
-                    }
-                });
-            }
+            notifyFocusLocked();
 
             mCaptureSession.capture(captureRequestBuilder.build(),
                     new CameraCaptureSession.CaptureCallback() {
+                        @Override
+                        public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                                     @NonNull CaptureRequest request,
+                                                     long timestamp, long frameNumber) {
+                            Camera2.this.onCaptureStarted();
+                        }
+
                         @Override
                         public void onCaptureCompleted(@NonNull CameraCaptureSession session,
                                                        @NonNull CaptureRequest request,
                                                        @NonNull TotalCaptureResult result) {
                             unlockFocus();
                         }
+
+                        @Override
+                        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                                    @NonNull CaptureRequest request,
+                                                    @NonNull CaptureFailure failure) {
+                            dropPicture(new IllegalStateException(
+                                    "The picture capture failed: " + failure.getReason()));
+                            unlockFocus();
+                        }
                     }, mBackgroundHandler);
         } catch (final Exception e) {
             if (BuildConfig.DEBUG) e.printStackTrace();
+            dropPicture(e);
             if (cameraErrorCallback != null) {
                 mPreview.getView().post(new Runnable() {
                     @Override
@@ -814,6 +1322,125 @@ class Camera2 extends CameraViewImpl {
         }
     }
 
+    /**
+     * Captures the shots of {@link #mBurst}, with the focus locked once by {@link #lockFocus()}
+     * and the exposure locked for all of them. Unpaced shots go to the camera in one
+     * {@link CameraCaptureSession#captureBurst}; paced ones are sent one by one from the
+     * background thread, with the preview running in between.
+     */
+    private void captureBurst() {
+        final PictureBurst burst = mBurst;
+        if (burst == null) return;
+        final BurstCaptureCallback callback = new BurstCaptureCallback(burst);
+        try {
+            CaptureRequest.Builder captureRequestBuilder = createStillRequest();
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AE_LOCK, true);
+            final CaptureRequest request = captureRequestBuilder.build();
+            notifyFocusLocked();
+            if (!burst.isPaced()) {
+                mCaptureSession.stopRepeating();
+                while (burst.startShot(System.nanoTime())) {
+                    // Every shot starts now
+                }
+                mCaptureSession.captureBurst(Collections.nCopies(burst.getSize(), request),
+                        callback, mBackgroundHandler);
+                return;
+            }
+            // The focus stays as lockFocus() left it, without a new trigger on every frame
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                    CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_LOCK, true);
+            mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mCaptureCallback,
+                    mBackgroundHandler);
+            mBackgroundHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mBurst != burst || mCaptureSession == null
+                            || !burst.startShot(System.nanoTime())) {
+                        return;
+                    }
+                    try {
+                        mCaptureSession.capture(request, callback, mBackgroundHandler);
+                    } catch (CameraAccessException e) {
+                        if (BuildConfig.DEBUG) e.printStackTrace();
+                        callback.shotCompleted(true);
+                    }
+                    if (burst.hasShotsToStart()) {
+                        long delayNanos = burst.getDelayNanos(System.nanoTime());
+                        mBackgroundHandler.postDelayed(this, delayNanos / 1000000L);
+                    }
+                }
+            });
+        } catch (final Exception e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+            mBurst = null;
+            unlockFocus();
+            if (cameraErrorCallback != null) {
+                mPreview.getView().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        cameraErrorCallback.onCameraError(e);
+                    }
+                });
+            }
+        }
+    }
+
+    private void beginPictureWrite() {
+        synchronized (mPictureWriteLock) {
+            mPictureWrites++;
+        }
+    }
+
+    private void endPictureWrite() {
+        synchronized (mPictureWriteLock) {
+            mPictureWrites--;
+            mPictureWriteLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits, for {@link #PICTURE_WRITE_TIMEOUT_MS} at most, for the pictures still being
+     * written from the JPEG reader, whose images go away with it.
+     */
+    private void awaitPictureWrites() {
+        synchronized (mPictureWriteLock) {
+            long deadline = System.currentTimeMillis() + PICTURE_WRITE_TIMEOUT_MS;
+            long left;
+            while (mPictureWrites > 0
+                    && (left = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    mPictureWriteLock.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives up on the burst being taken, if any, whose shots went with the previous capture
+     * session, and reports it.
+     */
+    private void abortBurst(String reason) {
+        if (mBurst == null) return;
+        mBurst = null;
+        if (mPreviewRequestBuilder != null) {
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_LOCK, false);
+        }
+        mCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
+        if (cameraErrorCallback != null) {
+            final IllegalStateException e = new IllegalStateException(reason);
+            mPreview.getView().post(new Runnable() {
+                @Override
+                public void run() {
+                    cameraErrorCallback.onCameraError(e);
+                }
+            });
+        }
+    }
+
     /**
      * Unlocks the auto-focus and restart camera preview. This is supposed to be called after
      * capturing a still picture.
@@ -821,6 +1448,7 @@ class Camera2 extends CameraViewImpl {
     void unlockFocus() {
         mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                 CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_LOCK, false);
         try {
             mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, mBackgroundHandler);
             updateAutoFocus();
@@ -856,6 +1484,9 @@ class Camera2 extends CameraViewImpl {
     }
 
     private void stopBackgroundThread() {
+        // Wakes up the frame thread if it is waiting for the frame listener
+        frameDispatcher.clear();
+        frameConsumers.clear();
         try {
             if (mBackgroundThread != null) mBackgroundThread.quitSafely();
             if (mBackgroundThread != null) mBackgroundThread.join();
@@ -880,6 +1511,8 @@ class Camera2 extends CameraViewImpl {
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        frameDispatcher.clear();
+        frameConsumers.clear();
     }
 
     //Zooming
@@ -967,6 +1600,50 @@ class Camera2 extends CameraViewImpl {
         mZoomDistance = 0f;
     }
 
+    /**
+     * Counts the shots of a burst as the camera captures them, and restarts the preview after
+     * the last one. Called on the background thread only.
+     */
+    private class BurstCaptureCallback extends CameraCaptureSession.CaptureCallback {
+
+        private final PictureBurst mShots;
+
+        BurstCaptureCallback(PictureBurst shots) {
+            mShots = shots;
+        }
+
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                     @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            Camera2.this.onCaptureStarted();
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                       @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            shotCompleted(false);
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                    @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            shotCompleted(true);
+        }
+
+        void shotCompleted(boolean failed) {
+            if (!mShots.shotCompleted(failed)) return;
+            // Unless the burst was given up with its session
+            if (mBurst != mShots) return;
+            unlockFocus();
+            // The pictures may have been delivered before the captures were reported
+            if (mShots.isFinished() && mBurst == mShots) mBurst = null;
+        }
+
+    }
+
     /**
      * A {@link CameraCaptureSession.CaptureCallback} for capturing a still picture.
      */
@@ -982,6 +1659,13 @@ class Camera2 extends CameraViewImpl {
 
         private int mState;
 
+        /**
+         * The latest focus and exposure states reported by any result, {@code null} until
+         * then.
+         */
+        private volatile Integer mAfState;
+        private volatile Integer mAeState;
+
         PictureCaptureCallback() {
         }
 
@@ -989,6 +1673,28 @@ class Camera2 extends CameraViewImpl {
             mState = state;
         }
 
+        /**
+         * Forgets the focus and exposure states, as for a new session.
+         */
+        void reset3aState() {
+            mAfState = null;
+            mAeState = null;
+        }
+
+        /**
+         * @return Whether the latest results report the focus settled on a subject and the
+         * exposure converged or locked.
+         */
+        boolean isConverged() {
+            Integer af = mAfState;
+            Integer ae = mAeState;
+            boolean focused = af != null && (af == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED
+                    || af == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED);
+            boolean exposed = ae == null || ae == CaptureResult.CONTROL_AE_STATE_CONVERGED
+                    || ae == CaptureResult.CONTROL_AE_STATE_LOCKED;
+            return focused && exposed;
+        }
+
         @Override
         public void onCaptureProgressed(@NonNull CameraCaptureSession session,
                                         @NonNull CaptureRequest request, @NonNull CaptureResult partialResult) {
@@ -1002,6 +1708,10 @@ class Camera2 extends CameraViewImpl {
         }
 
         private void process(@NonNull CaptureResult result) {
+            Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
+            if (afState != null) mAfState = afState;
+            Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
+            if (aeState != null) mAeState = aeState;
             switch (mState) {
                 case STATE_LOCKING: {
                     Integer af = result.get(CaptureResult.CONTROL_AF_STATE);
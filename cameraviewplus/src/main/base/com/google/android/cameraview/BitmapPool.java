@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mutable bitmaps kept for reuse by {@link PictureDecoder}, bucketed by the bytes they can
+ * hold, so that taking pictures of the same size does not allocate a new bitmap every time.
+ *
+ * <p>Reusing a bitmap of another size needs {@link Bitmap#reconfigure}, so the pool only keeps
+ * bitmaps from API 19 on. Before that it hands out new bitmaps and drops returned ones.</p>
+ */
+@TargetApi(19)
+class BitmapPool {
+
+    /**
+     * A pooled bitmap is not used for one that needs less than this part of its bytes.
+     */
+    private static final int MAX_WASTE_FACTOR = 2;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+
+    private final long mMaxBytes;
+
+    private long mBytes;
+
+    /**
+     * @param maxBytes The most bytes of bitmaps to keep. Older bitmaps of the largest size are
+     *                 dropped first.
+     */
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= 19;
+    }
+
+    /**
+     * @return A pooled bitmap that the decoder can decode {@code bytes} bytes of pixels into,
+     * or {@code null}.
+     */
+    synchronized Bitmap getForDecode(int bytes) {
+        return take(bytes);
+    }
+
+    /**
+     * @return A mutable bitmap of the given size, from the pool if one is big enough. Its
+     * pixels are not cleared.
+     */
+    Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap;
+        synchronized (this) {
+            bitmap = take(width * height * bytesPerPixel(config));
+        }
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, config);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Keeps {@code bitmap} for reuse. It must not be used by the caller afterwards.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || !isSupported()) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > mMaxBytes) return;
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(bytes, bucket);
+        }
+        bucket.addLast(bitmap);
+        mBytes += bytes;
+        while (mBytes > mMaxBytes) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = mBuckets.lastEntry();
+            largest.getValue().pollFirst();
+            mBytes -= largest.getKey();
+            if (largest.getValue().isEmpty()) {
+                mBuckets.remove(largest.getKey());
+            }
+        }
+    }
+
+    /**
+     * Drops every pooled bitmap.
+     */
+    synchronized void clear() {
+        mBuckets.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * @return The bytes held by the pooled bitmaps.
+     */
+    synchronized long getSize() {
+        return mBytes;
+    }
+
+    private Bitmap take(int bytes) {
+        if (!isSupported()) return null;
+        Integer key = mBuckets.ceilingKey(bytes);
+        if (key == null || key > (long) bytes * MAX_WASTE_FACTOR) return null;
+        ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+        Bitmap bitmap = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            mBuckets.remove(key);
+        }
+        mBytes -= key;
+        return bitmap;
+    }
+
+    static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) return 1;
+        if (config == Bitmap.Config.RGB_565) return 2;
+        return 4;
+    }
+
+}
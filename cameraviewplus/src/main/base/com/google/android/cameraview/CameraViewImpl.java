@@ -18,13 +18,19 @@ package com.google.android.cameraview;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
-import android.os.AsyncTask;
+import android.os.Handler;
 import android.view.MotionEvent;
 import android.view.View;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 public abstract class CameraViewImpl {
 
@@ -35,10 +41,122 @@ public abstract class CameraViewImpl {
 
     protected OnPictureTakenListener pictureCallback;
     protected OnPictureBytesAvailableListener pictureBytesCallback;
+    protected OnPictureBufferAvailableListener pictureBufferCallback;
     protected OnTurnCameraFailListener turnFailCallback;
     protected OnCameraErrorListener cameraErrorCallback;
     protected OnFocusLockedListener focusLockedCallback;
     protected OnFrameListener onFrameCallback;
+    protected OnFrameAvailableListener frameAvailableCallback;
+    protected OnPlanarFrameListener planarFrameCallback;
+
+    /**
+     * Buffers handed to {@link #frameAvailableCallback}, sized by the current frame geometry.
+     */
+    protected final FramePool framePool = new FramePool(FramePool.DEFAULT_CAPACITY);
+
+    protected int frameBufferCount = FramePool.DEFAULT_CAPACITY;
+
+    /**
+     * How many images the camera can fill ahead of the frame thread, on Camera2.
+     */
+    protected int frameImageCount = 3;
+
+    /**
+     * How many still pictures the camera can fill ahead of the app, on Camera2.
+     */
+    protected int pictureImageCount = 1;
+
+    /**
+     * Camera frames replaced by a newer one before the frame thread got to them. Written by
+     * the frame thread only.
+     */
+    protected volatile long staleFrameCount;
+
+    protected int framePyramidLevels;
+
+    protected int frameFormat = Constants.FRAME_FORMAT_NV21;
+
+    protected boolean parallelFrameConversion;
+
+    protected boolean uprightFrames;
+
+    protected boolean directFrames;
+
+    protected FrameSizePolicy frameSizePolicy = FrameSizePolicy.largest();
+
+    protected PictureDecodePolicy pictureDecodePolicy = PictureDecodePolicy.fullSize();
+
+    protected boolean fastCapture;
+
+    /**
+     * When the picture being taken was asked for, 0 once the camera has started on it.
+     */
+    private volatile long mShutterPressedNanos;
+
+    private volatile long mShutterLatencyNanos = -1;
+
+    /**
+     * Stands for the picture listeners in {@link #mPendingPictures}.
+     */
+    private static final PictureWriter NO_WRITER = new PictureWriter((File) null, null);
+
+    /**
+     * Where each picture the camera has accepted and not delivered yet goes, in the order they
+     * were asked for: a writer, or {@link #NO_WRITER}. Shots of a burst are not in it.
+     */
+    private final Queue<PictureWriter> mPendingPictures = new ConcurrentLinkedQueue<>();
+
+    protected boolean frameStatistics;
+
+    protected int frameStatisticsColumns = 4;
+
+    protected int frameStatisticsRows = 4;
+
+    /**
+     * Picks the camera frames worth converting for the frame listener.
+     */
+    protected final FrameRateLimiter frameRateLimiter = new FrameRateLimiter();
+
+    /**
+     * Frame consumers registered on top of the frame listener, each fed on its own executor.
+     */
+    protected final FrameFanOut frameConsumers = new FrameFanOut();
+
+    /**
+     * Queues converted frames for the frame listener thread.
+     */
+    protected final FrameDispatcher frameDispatcher = new FrameDispatcher(new FrameDispatcher.Callback() {
+        @Override
+        public void onFrame(Frame frame) {
+            dispatchFrame(frame);
+        }
+    });
+
+    /**
+     * Posted to the frame listener thread whenever {@link FrameDispatcher#offer} asks for it.
+     */
+    protected final Runnable frameDrainer = new Runnable() {
+        @Override
+        public void run() {
+            frameDispatcher.drain();
+        }
+    };
+
+    /**
+     * Numbers the frames from the camera. Advanced by the thread that receives them.
+     */
+    private long mFrameSequence;
+
+    /**
+     * The sequence number of the last frame stamped by {@link #stampFrame}. Guarded by this.
+     */
+    private long mLastStampedFrame = -1;
+
+    /**
+     * Holds upright direct frames while they are rotated. Only used by the thread that calls
+     * {@link #rotateUpright}.
+     */
+    private byte[] mUprightData;
 
     protected final PreviewImpl mPreview;
 
@@ -56,22 +174,21 @@ public abstract class CameraViewImpl {
 
     protected Size mPreviewSizeSelected;
     protected Size mPictureSizeSelected;
+    protected Size mFrameSizeSelected;
 
+    /**
+     * @param context May be {@code null} for an implementation that needs no orientation
+     *                sensor; {@link #orientation} is then {@code null} too.
+     */
     CameraViewImpl(PreviewImpl preview, Context context) {
         mPreview = preview;
-        orientation = new Orientation(context, 100);
+        orientation = context != null ? new Orientation(context, 100) : null;
     }
 
     View getView() {
         return mPreview.getView();
     }
 
-    private Bitmap mirrorBitmap (Bitmap bitmap) {
-        Matrix matrix = new Matrix();
-        matrix.preScale(-1.0f, 1.0f);
-        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-    }
-
     public void setOnPictureTakenListener (OnPictureTakenListener pictureCallback) {
         this.pictureCallback = pictureCallback;
     }
@@ -80,6 +197,15 @@ public abstract class CameraViewImpl {
         this.pictureBytesCallback = bytesCallback;
     }
 
+    /**
+     * Sets a listener for the JPEG of each picture, without a copy. On Camera2 the camera keeps
+     * one more still image for as long as this listener is set, so that a picture held by the
+     * app does not hold up the next one.
+     */
+    public void setOnPictureBufferAvailableListener (OnPictureBufferAvailableListener bufferCallback) {
+        this.pictureBufferCallback = bufferCallback;
+    }
+
     public void setOnFocusLockedListener (OnFocusLockedListener focusLockedListener) {
         this.focusLockedCallback = focusLockedListener;
     }
@@ -92,8 +218,243 @@ public abstract class CameraViewImpl {
         this.cameraErrorCallback = onCameraErrorListener;
     }
 
+    /**
+     * Replaces any {@link OnFrameAvailableListener}. The {@code byte[]} passed to this listener
+     * is never recycled, so a new one is allocated for every frame.
+     */
     public void setOnFrameListener (OnFrameListener onFrameListener) {
+        if (onFrameListener != null) clearFrameListeners();
         this.onFrameCallback = onFrameListener;
+        onFrameReceiversChanged();
+    }
+
+    /**
+     * Replaces any other frame listener. Frames passed to this listener are pooled and must
+     * be {@link Frame#release() released} once consumed.
+     */
+    public void setOnFrameAvailableListener (OnFrameAvailableListener frameAvailableListener) {
+        if (frameAvailableListener != null) clearFrameListeners();
+        this.frameAvailableCallback = frameAvailableListener;
+        onFrameReceiversChanged();
+    }
+
+    /**
+     * Replaces any other frame listener. Frames are not converted to NV21 and must be
+     * {@link PlanarFrame#close() closed} once consumed. On Camera2 they skip the
+     * {@link #setFrameDeliveryPolicy delivery policy}; on Camera1 they wrap the NV21 callback
+     * buffers and go through it like any other frame.
+     */
+    public void setOnPlanarFrameListener (OnPlanarFrameListener planarFrameListener) {
+        if (planarFrameListener != null) clearFrameListeners();
+        this.planarFrameCallback = planarFrameListener;
+        onFrameReceiversChanged();
+    }
+
+    /**
+     * Registers one more frame consumer, on top of any frame listener. All consumers share the
+     * same converted frame; each must {@link Frame#release() release} it once.
+     *
+     * @param executor Runs the listener. Only one task per consumer is queued at a time, so
+     *                 frames arrive in order on any executor.
+     * @param policy   What happens to new frames while this consumer is busy.
+     * @param maxFps   The highest rate at which this consumer gets frames, or 0 for no limit.
+     */
+    public void addOnFrameAvailableListener (OnFrameAvailableListener listener, Executor executor,
+                                             FrameDeliveryPolicy policy, float maxFps) {
+        frameConsumers.add(listener, executor, policy, maxFps);
+        onFrameReceiversChanged();
+    }
+
+    public void removeOnFrameAvailableListener (OnFrameAvailableListener listener) {
+        frameConsumers.remove(listener);
+        onFrameReceiversChanged();
+    }
+
+    private void clearFrameListeners () {
+        onFrameCallback = null;
+        frameAvailableCallback = null;
+        planarFrameCallback = null;
+    }
+
+    /**
+     * @return {@code true} if frames should go into direct buffers: they were asked for, and
+     * no listener needs an array.
+     */
+    protected boolean usesDirectFrames () {
+        return directFrames && onFrameCallback == null && planarFrameCallback == null;
+    }
+
+    protected boolean hasFrameListener () {
+        return onFrameCallback != null || frameAvailableCallback != null
+                || planarFrameCallback != null;
+    }
+
+    /**
+     * @return {@code true} if anybody wants preview frames, a frame listener or a consumer.
+     */
+    protected boolean hasFrameReceiver () {
+        return hasFrameListener() || !frameConsumers.isEmpty();
+    }
+
+    /**
+     * Called whenever a frame listener or consumer is set or removed, so that the camera
+     * produces frames only while somebody wants them.
+     */
+    protected void onFrameReceiversChanged () {
+    }
+
+    /**
+     * Hands a converted frame to whichever frame listener is registered. The frame is dropped
+     * back into the pool if nobody is listening any more.
+     */
+    protected void dispatchFrame (Frame frame) {
+        OnPlanarFrameListener planarFrameListener = planarFrameCallback;
+        OnFrameAvailableListener frameAvailableListener = frameAvailableCallback;
+        OnFrameListener frameListener = onFrameCallback;
+        long start = System.nanoTime();
+        if (planarFrameListener != null) {
+            planarFrameListener.onPlanarFrame(new PlanarFrame(frame,
+                    frame.getMetadata().getTimestamp()));
+        } else if (frameAvailableListener != null) {
+            frameAvailableListener.onFrameAvailable(frame);
+        } else if (frameListener != null) {
+            // The listener may keep the array; leave it out of the pool
+            int length = Frame.dataSize(frame.getWidth(), frame.getHeight(), frameFormat);
+            frameListener.onFrame(frame.detach(length), frame.getWidth(), frame.getHeight(),
+                    frame.getRotationDegrees());
+        } else {
+            frame.release();
+            return;
+        }
+        frameRateLimiter.onProcessed(System.nanoTime() - start);
+    }
+
+    /**
+     * @return The sequence number of a frame that just arrived from the camera. Called once
+     * for every frame, delivered or not.
+     */
+    protected long nextFrameSequence () {
+        return nextFrameSequence(1);
+    }
+
+    /**
+     * Like {@link #nextFrameSequence()} for {@code frames} frames that arrived together.
+     *
+     * @return The sequence number of the last of them.
+     */
+    protected long nextFrameSequence (int frames) {
+        mFrameSequence += frames;
+        return mFrameSequence - 1;
+    }
+
+    /**
+     * Fills in the metadata of a frame about to be delivered, counting the camera frames
+     * skipped since the previous one.
+     */
+    protected synchronized void stampFrame (FrameMetadata metadata, long sequenceNumber,
+                                            long timestamp, long arrivalNanos,
+                                            long conversionNanos) {
+        int dropped = (int) Math.max(0, sequenceNumber - mLastStampedFrame - 1);
+        mLastStampedFrame = Math.max(mLastStampedFrame, sequenceNumber);
+        metadata.set(sequenceNumber, dropped, timestamp, arrivalNanos, conversionNanos);
+    }
+
+    /**
+     * Picks who gets the next frame, before any work is spent on it.
+     *
+     * @param consumers Receives the frame consumers that are due.
+     * @return {@code true} if the frame listener is due.
+     */
+    protected boolean selectFrameReceivers (long nowNanos, List<FrameFanOut.Consumer> consumers) {
+        frameConsumers.select(nowNanos, consumers);
+        return hasFrameListener() && frameRateLimiter.accept(nowNanos);
+    }
+
+    /**
+     * Hands {@code frame} to the receivers picked by {@link #selectFrameReceivers}, then
+     * clears {@code consumers}. The caller's reference to the frame is passed on or released.
+     *
+     * @param handler The frame listener thread.
+     */
+    protected void deliverFrame (Frame frame, boolean primary,
+                                 List<FrameFanOut.Consumer> consumers, boolean canBlock,
+                                 Handler handler) {
+        if (handOutFrame(frame, primary, consumers, canBlock)) {
+            handler.post(frameDrainer);
+        }
+    }
+
+    /**
+     * Like {@link #deliverFrame}, for a producer that runs the frame listener thread some other
+     * way than with a {@link Handler}.
+     *
+     * @return {@code true} if {@link #frameDrainer} has to run on the frame listener thread.
+     */
+    protected boolean handOutFrame (Frame frame, boolean primary,
+                                    List<FrameFanOut.Consumer> consumers, boolean canBlock) {
+        frameConsumers.deliver(frame, consumers, canBlock);
+        consumers.clear();
+        if (!primary) {
+            frame.release();
+            return false;
+        }
+        return frameDispatcher.offer(frame, canBlock);
+    }
+
+    /**
+     * Copies {@code data} into a pooled frame turned upright, and mirrored for the front
+     * camera as pictures are.
+     *
+     * @param rotationDegrees The rotation of {@code data}, as reported to frame listeners.
+     */
+    protected Frame rotateUpright (byte[] data, int width, int height, int rotationDegrees,
+                                   int format) {
+        int degrees = -rotationDegrees;
+        boolean sideways = degrees % 180 != 0;
+        boolean direct = usesDirectFrames();
+        framePool.configure(sideways ? height : width, sideways ? width : height, format, direct);
+        Frame frame = framePool.acquire();
+        boolean mirror = getFacing() == Constants.FACING_FRONT;
+        byte[] output;
+        if (direct) {
+            int size = Frame.dataSize(width, height, format);
+            if (mUprightData == null || mUprightData.length != size) {
+                mUprightData = new byte[size];
+            }
+            output = mUprightData;
+        } else {
+            output = frame.getData();
+        }
+        if (format == Constants.FRAME_FORMAT_LUMA) {
+            Nv21Rotator.rotateLuma(data, width, height, degrees, mirror, output);
+        } else {
+            Nv21Rotator.rotate(data, width, height, degrees, mirror, output);
+        }
+        if (direct) {
+            frame.getBuffer().put(output);
+        }
+        frame.setRotationDegrees(0);
+        frame.preparePyramidLazily(framePyramidLevels);
+        prepareFrameStatistics(frame, true);
+        return frame;
+    }
+
+    /**
+     * Sets up the luma statistics of a frame about to be delivered, or clears them if they are
+     * turned off or the frame is direct.
+     *
+     * @param lazily Whether the first consumer to ask computes them.
+     * @return The statistics to fill along with the conversion, or {@code null}.
+     */
+    protected FrameStatistics prepareFrameStatistics (Frame frame, boolean lazily) {
+        FrameMetadata metadata = frame.getMetadata();
+        if (!frameStatistics || frame.isDirect()) {
+            metadata.clearStatistics();
+            return null;
+        }
+        FrameStatistics statistics = metadata.prepareStatistics(frame.getWidth(),
+                frame.getHeight(), frameStatisticsColumns, frameStatisticsRows, lazily);
+        return lazily ? null : statistics;
     }
 
     /**
@@ -126,7 +487,99 @@ public abstract class CameraViewImpl {
 
     abstract int getFlash();
 
-    abstract void takePicture();
+    void takePicture() {
+        takePicture((PictureWriter) null);
+    }
+
+    /**
+     * Takes a picture for {@code writer}, or for the picture listeners if it is {@code null}.
+     * If the camera accepts it, it calls {@link #acceptPicture}; otherwise
+     * {@link #refusePicture}.
+     */
+    abstract void takePicture(PictureWriter writer);
+
+    /**
+     * Takes {@code count} pictures with focus and exposure locked once for all of them, and
+     * passes them to the picture listeners in the order they were taken.
+     *
+     * @param intervalMillis The time from the start of one shot to the start of the next, or 0
+     *                       for as fast as the camera can.
+     */
+    abstract void takeBurst(int count, long intervalMillis);
+
+    /**
+     * Takes a picture and writes its JPEG to {@code file}, without decoding it or passing it to
+     * the picture listeners. If the camera cannot take it, the listener is told so.
+     */
+    void takePicture(File file, OnPictureSavedListener listener) {
+        takePicture(new PictureWriter(file, listener));
+    }
+
+    /**
+     * Takes a picture and writes its JPEG to {@code channel} at its position, without decoding
+     * it or passing it to the picture listeners. The channel is left open.
+     */
+    void takePicture(FileChannel channel, OnPictureSavedListener listener) {
+        takePicture(new PictureWriter(channel, listener));
+    }
+
+    /**
+     * Queues where the picture the camera has just accepted goes.
+     */
+    protected void acceptPicture(PictureWriter writer) {
+        mPendingPictures.add(writer != null ? writer : NO_WRITER);
+    }
+
+    /**
+     * @return Whether a picture was accepted and has not been delivered or dropped yet.
+     */
+    protected boolean hasPendingPicture() {
+        return !mPendingPictures.isEmpty();
+    }
+
+    /**
+     * Reports a picture the camera would not take: to its writer, or as a camera error.
+     */
+    protected void refusePicture(PictureWriter writer, Exception e) {
+        if (writer != null) {
+            writer.fail(e);
+        } else {
+            reportPictureError(e);
+        }
+    }
+
+    /**
+     * Hands the JPEG of the oldest pending picture to its writer, if it has one.
+     *
+     * @param image What {@code jpeg} belongs to, closed once it is written. May be
+     *              {@code null}.
+     * @return {@code false} if the picture is not to be saved; {@code image} is then left
+     * alone.
+     */
+    protected boolean savePicture(ByteBuffer jpeg, AutoCloseable image) {
+        PictureWriter writer = mPendingPictures.poll();
+        if (writer == null || writer == NO_WRITER) return false;
+        writer.write(jpeg, image, getRotationDegrees());
+        return true;
+    }
+
+    /**
+     * Forgets the oldest pending picture, which the camera will not deliver, and tells its
+     * writer.
+     */
+    protected void dropPicture(Exception e) {
+        PictureWriter writer = mPendingPictures.poll();
+        if (writer != null && writer != NO_WRITER) writer.fail(e);
+    }
+
+    /**
+     * Forgets every pending picture, as when the camera stops.
+     */
+    protected void dropPictures(Exception e) {
+        while (hasPendingPicture()) {
+            dropPicture(e);
+        }
+    }
 
     abstract void setDisplayOrientation(int displayOrientation);
 
@@ -150,21 +603,54 @@ public abstract class CameraViewImpl {
         return (float) Math.sqrt(x * x + y * y);
     }
 
-    protected void byteArrayToBitmap (final byte[] data) {
+    /**
+     * @param burstSize The size of the burst the picture belongs to, 1 for a single picture.
+     */
+    protected void byteArrayToBitmap (final byte[] data, int burstSize) {
         if (pictureCallback == null) return; //There's no point of wasting resources if there is no callback registered
-        AsyncTask.execute(new Runnable() {
+        final PictureDecodePolicy policy = pictureDecodePolicy;
+        final boolean mirror = getFacing() == CameraView.FACING_FRONT;
+        final int rotationDegrees = getRotationDegrees();
+        try {
+            PictureDecoder.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Bitmap bitmap = PictureDecoder.decode(data, policy, mirror, rotationDegrees);
+                    if (bitmap == null) {
+                        reportPictureError(new IllegalArgumentException("Could not decode the picture"));
+                        return;
+                    }
+                    if (pictureCallback != null) pictureCallback.onPictureTaken(bitmap, policy.isUpright() ? 0 : rotationDegrees);
+                }
+            }, burstSize);
+        } catch (RejectedExecutionException e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+            reportPictureError(e);
+        }
+    }
+
+    private void reportPictureError (final Exception e) {
+        if (cameraErrorCallback == null) return;
+        Runnable report = new Runnable() {
             @Override
             public void run() {
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inMutable = true;
-                Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
-                if (getFacing() == CameraView.FACING_FRONT) {
-                    if (pictureCallback != null) pictureCallback.onPictureTaken(mirrorBitmap(bitmap), getRotationDegrees());
-                } else {
-                    if (pictureCallback != null) pictureCallback.onPictureTaken(bitmap, getRotationDegrees());
-                }
+                cameraErrorCallback.onCameraError(e);
             }
-        });
+        };
+        View view = mPreview.getView();
+        if (view != null) {
+            view.post(report);
+        } else {
+            report.run();
+        }
+    }
+
+    /**
+     * Gives a bitmap passed to {@link OnPictureTakenListener} back, to be decoded into again.
+     * The caller must not use it afterwards.
+     */
+    public void releasePicture (Bitmap bitmap) {
+        PictureDecoder.release(bitmap);
     }
 
     public void setPixelsPerOneZoomLevel (int pixels) {
@@ -188,6 +674,270 @@ public abstract class CameraViewImpl {
         this.maximumPreviewWidth = maximumPreviewWidth;
     }
 
+    public int getFrameBufferCount() {
+        return frameBufferCount;
+    }
+
+    /**
+     * Sets how many frame buffers are cycled between the camera and the frame listeners.
+     */
+    public void setFrameBufferCount(int frameBufferCount) {
+        if (frameBufferCount <= 0) return;
+        this.frameBufferCount = frameBufferCount;
+        framePool.setCapacity(frameBufferCount);
+    }
+
+    public int getFrameImageCount() {
+        return frameImageCount;
+    }
+
+    /**
+     * Sets how many frames the camera can write while the frame thread is busy with another.
+     * Only the latest is converted unless the delivery policy blocks the producer. Camera1
+     * writes into the {@link #setFrameBufferCount(int) frame buffers} instead.
+     */
+    public void setFrameImageCount(int count) {
+        if (count <= 0) return;
+        frameImageCount = count;
+    }
+
+    public int getPictureImageCount() {
+        return pictureImageCount;
+    }
+
+    /**
+     * Sets how many still pictures the camera can write before the app reads them, not
+     * counting one held through {@link OnPictureBufferAvailableListener}. Has no effect on
+     * Camera1.
+     */
+    public void setPictureImageCount(int count) {
+        if (count <= 0) return;
+        pictureImageCount = count;
+    }
+
+    /**
+     * @return The number of camera frames skipped because a newer one was already waiting.
+     */
+    public long getStaleFrameCount() {
+        return staleFrameCount;
+    }
+
+    public float getAnalysisFrameRate() {
+        return frameRateLimiter.getTargetFps();
+    }
+
+    /**
+     * Caps how many frames per second are converted and passed to the frame listeners.
+     *
+     * @param fps The cap, or 0 for none.
+     */
+    public void setAnalysisFrameRate(float fps) {
+        frameRateLimiter.setTargetFps(fps);
+    }
+
+    public boolean isAdaptiveAnalysisFrameRate() {
+        return frameRateLimiter.isAdaptive();
+    }
+
+    /**
+     * Paces frames by how long the frame listener takes to return, on top of the
+     * {@link #setAnalysisFrameRate(float) analysis frame rate}.
+     */
+    public void setAdaptiveAnalysisFrameRate(boolean adaptive) {
+        frameRateLimiter.setAdaptive(adaptive);
+    }
+
+    /**
+     * @return The number of camera frames skipped, without conversion, to keep to the analysis
+     * frame rate.
+     */
+    public long getSkippedFrameCount() {
+        return frameRateLimiter.getSkippedCount();
+    }
+
+    public boolean isParallelFrameConversion() {
+        return parallelFrameConversion;
+    }
+
+    /**
+     * Spreads the conversion of large frames over all cores.
+     */
+    public void setParallelFrameConversion(boolean parallel) {
+        parallelFrameConversion = parallel;
+    }
+
+    public boolean isUprightFrames() {
+        return uprightFrames;
+    }
+
+    /**
+     * Turns frames upright before they reach the frame listeners, mirroring those of the front
+     * camera. Their rotation is then 0. Planar frames are not affected.
+     */
+    public void setUprightFrames(boolean upright) {
+        uprightFrames = upright;
+    }
+
+    public boolean isFastCapture() {
+        return fastCapture;
+    }
+
+    /**
+     * Has pictures taken right away, without locking focus and exposure first, when the
+     * preview already reports them settled. Otherwise the usual focus and metering sequence
+     * runs.
+     */
+    public void setFastCapture(boolean fast) {
+        fastCapture = fast;
+    }
+
+    /**
+     * @return The time in nanoseconds from the last {@link #takePicture()} or
+     * {@link #takeBurst} call to the camera starting on the picture, or -1 before the first
+     * picture.
+     */
+    public long getShutterLatencyNanos() {
+        return mShutterLatencyNanos;
+    }
+
+    /**
+     * Starts timing the shutter latency. Called when a picture is asked for.
+     */
+    protected void onShutterPressed() {
+        mShutterPressedNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops timing the shutter latency. Called when the camera starts on the picture; later
+     * calls for the same picture, such as for the other shots of a burst, are ignored.
+     */
+    protected void onCaptureStarted() {
+        long pressed = mShutterPressedNanos;
+        if (pressed == 0) return;
+        mShutterPressedNanos = 0;
+        mShutterLatencyNanos = System.nanoTime() - pressed;
+    }
+
+    public boolean isDirectFrames() {
+        return directFrames;
+    }
+
+    /**
+     * Has frames converted straight into pooled direct buffers, for native code to read in
+     * place. Only applies while no {@link OnFrameListener} or {@link OnPlanarFrameListener} is
+     * set. Direct frames come without a pyramid or statistics.
+     *
+     * @see Frame#getBuffer()
+     */
+    public void setDirectFrames(boolean direct) {
+        directFrames = direct;
+    }
+
+    public int getFrameFormat() {
+        return frameFormat;
+    }
+
+    /**
+     * Sets what frame listeners receive: NV21, or only its luma plane, which skips the chroma
+     * conversion. Other values are ignored.
+     */
+    public void setFrameFormat(int frameFormat) {
+        if (frameFormat != Constants.FRAME_FORMAT_NV21
+                && frameFormat != Constants.FRAME_FORMAT_LUMA) return;
+        this.frameFormat = frameFormat;
+    }
+
+    public boolean isFrameStatisticsEnabled() {
+        return frameStatistics;
+    }
+
+    /**
+     * Computes the luma mean, histogram and tile grid of each {@link Frame}, available from
+     * its {@link FrameMetadata}.
+     */
+    public void setFrameStatisticsEnabled(boolean enabled) {
+        frameStatistics = enabled;
+    }
+
+    public int getFrameStatisticsColumns() {
+        return frameStatisticsColumns;
+    }
+
+    public int getFrameStatisticsRows() {
+        return frameStatisticsRows;
+    }
+
+    /**
+     * Sets how many tiles across and down the frame statistics average the luma over.
+     */
+    public void setFrameStatisticsGrid(int columns, int rows) {
+        if (columns <= 0 || rows <= 0) return;
+        frameStatisticsColumns = columns;
+        frameStatisticsRows = rows;
+    }
+
+    public int getFramePyramidLevels() {
+        return framePyramidLevels;
+    }
+
+    /**
+     * Sets how many halved luma levels are computed along with each {@link Frame}.
+     */
+    public void setFramePyramidLevels(int levels) {
+        if (levels < 0) return;
+        framePyramidLevels = levels;
+    }
+
+    public FrameSizePolicy getFrameSizePolicy() {
+        return frameSizePolicy;
+    }
+
+    /**
+     * Sets how the size of frames is picked, apart from the on-screen preview size. Only
+     * Camera2 has a stream of its own for frames; Camera1 frames are the preview size.
+     */
+    public void setFrameSizePolicy(FrameSizePolicy policy) {
+        if (policy == null) return;
+        frameSizePolicy = policy;
+    }
+
+    public PictureDecodePolicy getPictureDecodePolicy() {
+        return pictureDecodePolicy;
+    }
+
+    /**
+     * Sets the size and orientation of the bitmaps passed to {@link OnPictureTakenListener}.
+     * Takes effect from the next picture.
+     */
+    public void setPictureDecodePolicy(PictureDecodePolicy policy) {
+        if (policy == null) return;
+        pictureDecodePolicy = policy;
+    }
+
+    public void setFrameDeliveryPolicy(FrameDeliveryPolicy policy) {
+        if (policy == null) return;
+        frameDispatcher.setPolicy(policy);
+    }
+
+    public FrameDeliveryPolicy getFrameDeliveryPolicy() {
+        return frameDispatcher.getPolicy();
+    }
+
+    /**
+     * @return The number of frames handed to the frame listener so far.
+     */
+    public long getDeliveredFrameCount() {
+        return frameDispatcher.getDeliveredCount();
+    }
+
+    /**
+     * @return The number of converted frames discarded by the {@link FrameDeliveryPolicy}
+     * because the frame listener could not keep up.
+     */
+    public long getDroppedFrameCount() {
+        return frameDispatcher.getDroppedCount();
+    }
+
     public Size getPreviewSize() {
         return mPreviewSizeSelected;
     }
@@ -196,6 +946,13 @@ public abstract class CameraViewImpl {
         return mPictureSizeSelected;
     }
 
+    /**
+     * @return The size of the camera frames behind frame listeners, before any rotation.
+     */
+    public Size getFrameSize() {
+        return mFrameSizeSelected;
+    }
+
     protected int getRotationDegrees () {
         return -(currentOrientationDegrees + getCameraDefaultOrientation());
     }
@@ -220,6 +977,22 @@ public abstract class CameraViewImpl {
         void onPictureBytesAvailable (byte[] bytes, int rotationDegrees);
     }
 
+    public interface OnPictureBufferAvailableListener {
+        /**
+         * @param picture The JPEG. Call {@link PictureBuffer#release()} when done with it.
+         */
+        void onPictureBufferAvailable (PictureBuffer picture);
+    }
+
+    public interface OnPictureSavedListener {
+        /**
+         * Called on the write thread once the picture is written.
+         */
+        void onPictureSaved (int rotationDegrees);
+
+        void onPictureSaveFailed (Exception e);
+    }
+
     public interface OnTurnCameraFailListener {
         void onTurnCameraFail (Exception e);
     }
@@ -236,4 +1009,20 @@ public abstract class CameraViewImpl {
         void onFrame (byte[] data, int width, int height, int rotationDegrees);
     }
 
+    public interface OnFrameAvailableListener {
+        /**
+         * @param frame The frame in the {@link #setFrameFormat(int) frame format}. Call
+         *              {@link Frame#release()} when done with it.
+         */
+        void onFrameAvailable (Frame frame);
+    }
+
+    public interface OnPlanarFrameListener {
+        /**
+         * @param frame The frame in YUV 4:2:0. Call {@link PlanarFrame#close()} when done with
+         *              it.
+         */
+        void onPlanarFrame (PlanarFrame frame);
+    }
+
 }
@@ -32,4 +32,7 @@ interface Constants {
 
     int LANDSCAPE_90 = 90;
     int LANDSCAPE_270 = 270;
+
+    int FRAME_FORMAT_NV21 = 0;
+    int FRAME_FORMAT_LUMA = 1;
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A preview frame in NV21 or luma-only format whose buffer is owned by a {@link FramePool}.
+ *
+ * <p>The buffer stays valid until {@link #release()} is called. After that it is handed out
+ * again for a later frame, so the consumer must not touch it any more. A frame shared by
+ * several consumers is reference counted: each of them releases it once, and the buffer goes
+ * back to the pool with the last release.</p>
+ *
+ * <p>A direct frame keeps its data in a direct {@link ByteBuffer} instead of an array, for
+ * native code to read in place; see {@link #getBuffer()}.</p>
+ */
+public class Frame {
+
+    private final FramePool mPool;
+    private final byte[] mData;
+    private final ByteBuffer mBuffer;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFormat;
+
+    private int mRotationDegrees;
+
+    private final FrameMetadata mMetadata = new FrameMetadata(this);
+
+    private byte[][] mPyramid = new byte[0][];
+
+    /**
+     * Whether {@link #mPyramid} still has to be built from {@link #mData}. Guarded by this.
+     */
+    private boolean mPyramidStale;
+
+    /**
+     * Guarded by {@link #mPool}.
+     */
+    boolean mInUse;
+
+    /**
+     * Guarded by {@link #mPool}.
+     */
+    int mRefCount;
+
+    Frame(FramePool pool, int width, int height, int format) {
+        this(pool, width, height, format, false);
+    }
+
+    Frame(FramePool pool, int width, int height, int format, boolean direct) {
+        mPool = pool;
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+        int size = dataSize(width, height, format);
+        if (direct) {
+            mData = null;
+            // Whole 8-byte words, so native code may read the tail a word at a time
+            mBuffer = ByteBuffer.allocateDirect((size + 7) & ~7);
+        } else {
+            mData = new byte[size];
+            mBuffer = ByteBuffer.wrap(mData);
+        }
+        mBuffer.limit(size);
+    }
+
+    /**
+     * @return The data of this frame. In either format the luma (Y) plane comes first, so the
+     * first {@code width * height} bytes are always the grayscale image.
+     * @throws IllegalStateException If this is a direct frame; use {@link #getBuffer()}.
+     */
+    public byte[] getData() {
+        if (mData == null) {
+            throw new IllegalStateException("A direct frame has no array, use getBuffer()");
+        }
+        return mData;
+    }
+
+    /**
+     * Returns the data of this frame as a buffer in native byte order, from position 0 to the
+     * end of the data. Each call returns a new buffer over the same memory.
+     *
+     * <p>For a direct frame this is the way to the data: native code gets its address with
+     * {@code GetDirectBufferAddress} and reads it without another copy. The memory is at least
+     * 8-byte aligned, as the platform allocates direct buffers, and its capacity is rounded up
+     * to a whole number of 8-byte words. For any other frame the buffer wraps
+     * {@link #getData()}.</p>
+     */
+    public ByteBuffer getBuffer() {
+        return mBuffer.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @return {@code true} if the data is in a direct buffer rather than an array.
+     */
+    public boolean isDirect() {
+        return mData == null;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return {@link CameraView#FRAME_FORMAT_NV21} or {@link CameraView#FRAME_FORMAT_LUMA}.
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getRotationDegrees() {
+        return mRotationDegrees;
+    }
+
+    void setRotationDegrees(int rotationDegrees) {
+        mRotationDegrees = rotationDegrees;
+    }
+
+    /**
+     * @return The timing and sequence number of this frame, updated whenever the buffer is
+     * reused. Read it before {@link #release()}.
+     */
+    public FrameMetadata getMetadata() {
+        return mMetadata;
+    }
+
+    /**
+     * @return The number of downscaled luma levels that come with this frame.
+     * @see #getPyramidLevel(int)
+     */
+    public int getPyramidLevelCount() {
+        return mPyramid.length;
+    }
+
+    /**
+     * Returns the luma (Y) plane of one level of the image pyramid. Level {@code n} is
+     * {@link #getPyramidWidth(int)} by {@link #getPyramidHeight(int)} pixels, each the average
+     * of a 2x2 block of level {@code n - 1}.
+     *
+     * @param level 0 for the full resolution luma, which is the start of {@link #getData()},
+     *              up to {@link #getPyramidLevelCount()}.
+     */
+    public byte[] getPyramidLevel(int level) {
+        if (level == 0) {
+            return getData();
+        }
+        synchronized (this) {
+            if (mPyramidStale) {
+                Utils.buildPyramid(mData, mWidth, mHeight, mPyramid);
+                mPyramidStale = false;
+            }
+        }
+        return mPyramid[level - 1];
+    }
+
+    public int getPyramidWidth(int level) {
+        return mWidth >> level;
+    }
+
+    public int getPyramidHeight(int level) {
+        return mHeight >> level;
+    }
+
+    /**
+     * Makes room for {@code levels} pyramid levels, fewer if the frame is too small. Buffers
+     * of levels that are kept are reused. A direct frame has no pyramid.
+     *
+     * @return The buffers of levels 1 and up, to be filled by the caller.
+     */
+    synchronized byte[][] preparePyramid(int levels) {
+        if (mData == null) {
+            levels = 0;
+        }
+        while (levels > 0 && (getPyramidWidth(levels) == 0 || getPyramidHeight(levels) == 0)) {
+            levels--;
+        }
+        if (mPyramid.length != levels) {
+            byte[][] pyramid = new byte[levels][];
+            for (int i = 0; i < levels; i++) {
+                pyramid[i] = i < mPyramid.length ? mPyramid[i]
+                        : new byte[getPyramidWidth(i + 1) * getPyramidHeight(i + 1)];
+            }
+            mPyramid = pyramid;
+        }
+        mPyramidStale = false;
+        return mPyramid;
+    }
+
+    /**
+     * Like {@link #preparePyramid(int)}, but the levels are built from the data of this frame
+     * by whichever consumer first asks for one, on its own thread.
+     */
+    synchronized void preparePyramidLazily(int levels) {
+        preparePyramid(levels);
+        mPyramidStale = mPyramid.length > 0;
+    }
+
+    /**
+     * Adds a reference to this frame, to be given up with one more {@link #release()}.
+     *
+     * @throws IllegalStateException If the frame was already released.
+     */
+    public void retain() {
+        mPool.retain(this);
+    }
+
+    /**
+     * Gives up a reference to this frame. The buffer returns to its pool when the last one is
+     * given up; releasing a frame that is back in the pool has no effect.
+     */
+    public void release() {
+        mPool.recycle(this);
+    }
+
+    /**
+     * Gives up this frame and returns the first {@code length} bytes of its data as an array
+     * that is never recycled. The frame must not be used afterwards.
+     */
+    byte[] detach(int length) {
+        return mPool.detach(this, length);
+    }
+
+    static int nv21Size(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    static int dataSize(int width, int height, int format) {
+        return format == Constants.FRAME_FORMAT_LUMA ? width * height : nv21Size(width, height);
+    }
+
+}
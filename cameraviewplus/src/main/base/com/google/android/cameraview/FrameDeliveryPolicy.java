@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Immutable description of what happens to new frames while the frame listener is still busy
+ * with earlier ones.
+ */
+public final class FrameDeliveryPolicy {
+
+    /** Only the newest frame is kept; older undelivered frames are dropped. */
+    public static final int MODE_KEEP_LATEST = 0;
+
+    /** Up to {@link #getDepth()} frames are queued; the oldest is dropped when it overflows. */
+    public static final int MODE_QUEUE = 1;
+
+    /** The camera waits for the listener once {@link #getDepth()} frames are queued. */
+    public static final int MODE_BLOCK_PRODUCER = 2;
+
+    private static final FrameDeliveryPolicy KEEP_LATEST =
+            new FrameDeliveryPolicy(MODE_KEEP_LATEST, 1);
+
+    private static final FrameDeliveryPolicy BLOCK_PRODUCER =
+            new FrameDeliveryPolicy(MODE_BLOCK_PRODUCER, 1);
+
+    private final int mMode;
+
+    private final int mDepth;
+
+    private FrameDeliveryPolicy(int mode, int depth) {
+        mMode = mode;
+        mDepth = depth;
+    }
+
+    /**
+     * The listener always gets the freshest frame. This is the default.
+     */
+    public static FrameDeliveryPolicy keepLatest() {
+        return KEEP_LATEST;
+    }
+
+    /**
+     * The listener gets frames in order, with at most {@code depth} of them waiting.
+     */
+    public static FrameDeliveryPolicy queue(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Queue depth must be positive: " + depth);
+        }
+        return new FrameDeliveryPolicy(MODE_QUEUE, depth);
+    }
+
+    /**
+     * No frame is dropped once converted; the frame pipeline waits for the listener instead.
+     */
+    public static FrameDeliveryPolicy blockProducer() {
+        return BLOCK_PRODUCER;
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public int getDepth() {
+        return mDepth;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        }
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof FrameDeliveryPolicy) {
+            FrameDeliveryPolicy policy = (FrameDeliveryPolicy) o;
+            return mMode == policy.mMode && mDepth == policy.mDepth;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return mMode * 31 + mDepth;
+    }
+
+    @Override
+    public String toString() {
+        switch (mMode) {
+            case MODE_KEEP_LATEST:
+                return "KEEP_LATEST";
+            case MODE_QUEUE:
+                return "QUEUE(" + mDepth + ")";
+            default:
+                return "BLOCK_PRODUCER";
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.ArrayDeque;
+
+/**
+ * Hands frames from the camera thread to the frame listener thread according to a
+ * {@link FrameDeliveryPolicy}.
+ *
+ * <p>The producer calls {@link #offer(Frame, boolean)} and schedules {@link #drain()} on the
+ * consumer thread whenever it returns {@code true}. At most one drain is scheduled at a time,
+ * so the consumer thread's queue never grows with the frame rate, and at most one runs at a
+ * time, so frames reach a multi-threaded executor one after the other and in order.</p>
+ */
+class FrameDispatcher {
+
+    interface Callback {
+        void onFrame(Frame frame);
+    }
+
+    private final Callback mCallback;
+
+    private final ArrayDeque<Frame> mFrames = new ArrayDeque<>();
+
+    private FrameDeliveryPolicy mPolicy = FrameDeliveryPolicy.keepLatest();
+
+    private boolean mDrainScheduled;
+
+    /**
+     * Whether a drain is delivering frames. {@link #clear()} may schedule another before it
+     * is done; that one then leaves the frames to it.
+     */
+    private boolean mDraining;
+
+    private long mDeliveredCount;
+
+    private long mDroppedCount;
+
+    FrameDispatcher(Callback callback) {
+        mCallback = callback;
+    }
+
+    synchronized void setPolicy(FrameDeliveryPolicy policy) {
+        mPolicy = policy;
+        trim(policy.getDepth());
+        notifyAll();
+    }
+
+    synchronized FrameDeliveryPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Waits until a new frame would be accepted without dropping. Returns immediately unless
+     * the policy is {@link FrameDeliveryPolicy#MODE_BLOCK_PRODUCER}. Call it before preparing
+     * a frame so the frame is not stale by the time it is queued.
+     */
+    synchronized void awaitCapacity() throws InterruptedException {
+        while (mPolicy.getMode() == FrameDeliveryPolicy.MODE_BLOCK_PRODUCER
+                && mFrames.size() >= mPolicy.getDepth()) {
+            wait();
+        }
+    }
+
+    /**
+     * Queues {@code frame} for the consumer, dropping older frames as the policy dictates.
+     *
+     * @param canBlock {@code false} if the calling thread must never wait. A blocking policy
+     *                 then queues the frame over its depth instead.
+     * @return {@code true} if the caller must schedule {@link #drain()}.
+     */
+    synchronized boolean offer(Frame frame, boolean canBlock) {
+        if (mPolicy.getMode() == FrameDeliveryPolicy.MODE_BLOCK_PRODUCER) {
+            if (canBlock) {
+                try {
+                    awaitCapacity();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    frame.release();
+                    mDroppedCount++;
+                    return false;
+                }
+            }
+        } else {
+            trim(mPolicy.getDepth() - 1);
+        }
+        mFrames.offer(frame);
+        if (mDrainScheduled) {
+            return false;
+        }
+        mDrainScheduled = true;
+        return true;
+    }
+
+    /**
+     * Delivers queued frames to the callback until none are left. Runs on the consumer thread.
+     */
+    void drain() {
+        synchronized (this) {
+            if (mDraining) return;
+            mDraining = true;
+        }
+        Frame frame;
+        while ((frame = poll()) != null) {
+            mCallback.onFrame(frame);
+        }
+    }
+
+    private synchronized Frame poll() {
+        Frame frame = mFrames.poll();
+        if (frame == null) {
+            mDrainScheduled = false;
+            mDraining = false;
+        } else {
+            mDeliveredCount++;
+            notifyAll();
+        }
+        return frame;
+    }
+
+    /**
+     * Releases every queued frame and wakes up a waiting producer. The next offer schedules a
+     * drain again, in case the scheduled one was discarded with its thread.
+     */
+    synchronized void clear() {
+        Frame frame;
+        while ((frame = mFrames.poll()) != null) {
+            frame.release();
+        }
+        mDrainScheduled = false;
+        notifyAll();
+    }
+
+    synchronized long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * @return The number of frames discarded because the consumer could not keep up.
+     */
+    synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    private void trim(int size) {
+        while (mFrames.size() > Math.max(size, 0)) {
+            mFrames.poll().release();
+            mDroppedCount++;
+        }
+    }
+
+}
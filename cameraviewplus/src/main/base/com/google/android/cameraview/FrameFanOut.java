@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Shares each converted {@link Frame} between any number of consumers. Every consumer has its
+ * own executor, frame rate and {@link FrameDeliveryPolicy}, and holds its own reference to the
+ * frame, so one conversion serves them all without copies.
+ */
+class FrameFanOut {
+
+    static class Consumer {
+
+        final CameraViewImpl.OnFrameAvailableListener mListener;
+
+        private final Executor mExecutor;
+
+        final FrameRateLimiter mLimiter = new FrameRateLimiter();
+
+        final FrameDispatcher mDispatcher;
+
+        private final Runnable mDrainer = new Runnable() {
+            @Override
+            public void run() {
+                mDispatcher.drain();
+            }
+        };
+
+        Consumer(final CameraViewImpl.OnFrameAvailableListener listener, Executor executor,
+                 FrameDeliveryPolicy policy, float maxFps) {
+            mListener = listener;
+            mExecutor = executor;
+            mLimiter.setTargetFps(maxFps);
+            mDispatcher = new FrameDispatcher(new FrameDispatcher.Callback() {
+                @Override
+                public void onFrame(Frame frame) {
+                    listener.onFrameAvailable(frame);
+                }
+            });
+            mDispatcher.setPolicy(policy);
+        }
+
+        void offer(Frame frame, boolean canBlock) {
+            if (mDispatcher.offer(frame, canBlock)) {
+                try {
+                    mExecutor.execute(mDrainer);
+                } catch (RejectedExecutionException e) {
+                    // The executor is gone; so are the frames waiting for it
+                    mDispatcher.clear();
+                }
+            }
+        }
+
+    }
+
+    private final CopyOnWriteArrayList<Consumer> mConsumers = new CopyOnWriteArrayList<>();
+
+    void add(CameraViewImpl.OnFrameAvailableListener listener, Executor executor,
+             FrameDeliveryPolicy policy, float maxFps) {
+        remove(listener);
+        mConsumers.add(new Consumer(listener, executor, policy, maxFps));
+    }
+
+    /**
+     * Unregisters {@code listener}, releasing the frames still waiting for it.
+     */
+    void remove(CameraViewImpl.OnFrameAvailableListener listener) {
+        for (Consumer consumer : mConsumers) {
+            if (consumer.mListener == listener) {
+                mConsumers.remove(consumer);
+                consumer.mDispatcher.clear();
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return mConsumers.isEmpty();
+    }
+
+    /**
+     * Picks the consumers due for a new frame. Called before conversion, so a frame nobody
+     * wants costs nothing.
+     *
+     * @param selected Receives the consumers. Reused by the caller to avoid allocations.
+     */
+    void select(long nowNanos, List<Consumer> selected) {
+        for (Consumer consumer : mConsumers) {
+            if (consumer.mLimiter.accept(nowNanos)) {
+                selected.add(consumer);
+            }
+        }
+    }
+
+    /**
+     * Hands {@code frame} to the {@code selected} consumers, each with a reference of its own.
+     * The caller keeps its own reference.
+     */
+    void deliver(Frame frame, List<Consumer> selected, boolean canBlock) {
+        for (int i = 0, count = selected.size(); i < count; i++) {
+            frame.retain();
+            selected.get(i).offer(frame, canBlock);
+        }
+    }
+
+    /**
+     * Releases every frame still waiting for a consumer.
+     */
+    void clear() {
+        for (Consumer consumer : mConsumers) {
+            consumer.mDispatcher.clear();
+        }
+    }
+
+}
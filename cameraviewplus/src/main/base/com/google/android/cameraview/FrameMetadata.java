@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * When and how a preview frame was produced. All times are in nanoseconds.
+ *
+ * <p>On Camera2 the sensor timestamp is {@code Image.getTimestamp()}, which shares the time
+ * base of {@link System#nanoTime()} on most devices, so {@code getArrivalNanos() -
+ * getTimestamp()} is the camera pipeline latency. Camera1 reports no sensor time; the arrival
+ * time stands in for it.</p>
+ */
+public class FrameMetadata {
+
+    private long mSequenceNumber;
+    private int mDroppedFrameCount;
+    private long mTimestamp;
+    private long mArrivalNanos;
+    private long mConversionNanos;
+
+    /**
+     * The frame whose luma the statistics are computed from, if any.
+     */
+    private final Frame mFrame;
+
+    private FrameStatistics mStatistics;
+
+    /**
+     * Whether {@link #mStatistics} still has to be computed. Guarded by this.
+     */
+    private boolean mStatisticsStale;
+
+    FrameMetadata() {
+        this(null);
+    }
+
+    FrameMetadata(Frame frame) {
+        mFrame = frame;
+    }
+
+    /**
+     * @return The position of this frame among all frames from the camera since the camera
+     * view was created, counting those that were never delivered.
+     */
+    public long getSequenceNumber() {
+        return mSequenceNumber;
+    }
+
+    /**
+     * @return How many camera frames arrived since the previous frame handed to the frame
+     * listeners and were skipped. A listener that drops frames of its own, through its
+     * {@link FrameDeliveryPolicy} or frame rate, sees them as gaps in
+     * {@link #getSequenceNumber()} instead.
+     */
+    public int getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * @return The time the sensor started exposing the frame.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} at which the frame reached the app.
+     */
+    public long getArrivalNanos() {
+        return mArrivalNanos;
+    }
+
+    /**
+     * @return The time spent turning the camera buffer into this frame, 0 if the camera
+     * buffer is handed out as is.
+     */
+    public long getConversionNanos() {
+        return mConversionNanos;
+    }
+
+    /**
+     * @return The luma statistics of the frame, or {@code null} unless they were turned on.
+     * Computed by whichever consumer first asks for them if the frame conversion did not
+     * already.
+     */
+    public FrameStatistics getStatistics() {
+        synchronized (this) {
+            if (mStatisticsStale) {
+                mStatistics.compute(mFrame.getData());
+                mStatisticsStale = false;
+            }
+        }
+        return mStatistics;
+    }
+
+    /**
+     * Resets the statistics for a new frame.
+     *
+     * @param lazily Whether they are left for {@link #getStatistics()} to compute. If not, the
+     *               caller fills them.
+     */
+    synchronized FrameStatistics prepareStatistics(int width, int height, int columns, int rows,
+                                                   boolean lazily) {
+        if (mStatistics == null) {
+            mStatistics = new FrameStatistics();
+        }
+        mStatistics.reset(width, height, columns, rows);
+        mStatisticsStale = lazily && mFrame != null;
+        return mStatistics;
+    }
+
+    synchronized void clearStatistics() {
+        mStatistics = null;
+        mStatisticsStale = false;
+    }
+
+    void set(long sequenceNumber, int droppedFrameCount, long timestamp, long arrivalNanos,
+             long conversionNanos) {
+        mSequenceNumber = sequenceNumber;
+        mDroppedFrameCount = droppedFrameCount;
+        mTimestamp = timestamp;
+        mArrivalNanos = arrivalNanos;
+        mConversionNanos = conversionNanos;
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Keeps released {@link Frame}s of a single geometry around so that steady-state frame delivery
+ * does not allocate.
+ */
+class FramePool {
+
+    static final int DEFAULT_CAPACITY = 3;
+
+    private int mCapacity;
+
+    private final ArrayDeque<Frame> mFrames;
+
+    private int mWidth;
+
+    private int mHeight;
+
+    private int mFormat = Constants.FRAME_FORMAT_NV21;
+
+    private boolean mDirect;
+
+    FramePool(int capacity) {
+        mCapacity = capacity;
+        mFrames = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Sets the geometry of the NV21 frames handed out by {@link #acquire()}. Pooled frames of
+     * any other geometry are dropped.
+     */
+    synchronized void configure(int width, int height) {
+        configure(width, height, Constants.FRAME_FORMAT_NV21);
+    }
+
+    synchronized void configure(int width, int height, int format) {
+        configure(width, height, format, false);
+    }
+
+    /**
+     * @param direct Whether the frames keep their data in direct buffers.
+     */
+    synchronized void configure(int width, int height, int format, boolean direct) {
+        if (mWidth == width && mHeight == height && mFormat == format && mDirect == direct) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+        mDirect = direct;
+        mFrames.clear();
+    }
+
+    /**
+     * Sets how many released frames are kept for reuse.
+     */
+    synchronized void setCapacity(int capacity) {
+        mCapacity = capacity;
+        while (mFrames.size() > capacity) {
+            mFrames.pollLast();
+        }
+    }
+
+    synchronized int getCapacity() {
+        return mCapacity;
+    }
+
+    synchronized int getWidth() {
+        return mWidth;
+    }
+
+    synchronized int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return A frame of the configured geometry, either recycled or newly allocated.
+     */
+    synchronized Frame acquire() {
+        Frame frame = mFrames.pollFirst();
+        if (frame == null) {
+            frame = new Frame(this, mWidth, mHeight, mFormat, mDirect);
+        }
+        frame.mInUse = true;
+        frame.mRefCount = 1;
+        return frame;
+    }
+
+    synchronized void retain(Frame frame) {
+        if (!frame.mInUse) {
+            throw new IllegalStateException("Frame already released");
+        }
+        frame.mRefCount++;
+    }
+
+    synchronized void recycle(Frame frame) {
+        if (!frame.mInUse || --frame.mRefCount > 0) {
+            return;
+        }
+        frame.mInUse = false;
+        if (frame.getWidth() != mWidth || frame.getHeight() != mHeight
+                || frame.getFormat() != mFormat || frame.isDirect() != mDirect) {
+            return;
+        }
+        onRecycle(frame);
+    }
+
+    /**
+     * Called with the pool locked when a frame of the current geometry is released. Keeps it
+     * for a later {@link #acquire()} by default.
+     */
+    void onRecycle(Frame frame) {
+        if (mFrames.size() < mCapacity) {
+            // Most recently used first; its buffer is the likeliest to still be in cache
+            mFrames.offerFirst(frame);
+        }
+    }
+
+    /**
+     * Takes the data of {@code frame} out of this pool for good. Only the first
+     * {@code length} bytes are copied if the caller wants less than the whole buffer.
+     *
+     * @return An array the caller may keep.
+     */
+    synchronized byte[] detach(Frame frame, int length) {
+        if (frame.isDirect()) {
+            byte[] data = new byte[length];
+            frame.getBuffer().get(data);
+            recycle(frame);
+            return data;
+        }
+        byte[] data = frame.getData();
+        if (data.length != length) {
+            data = Arrays.copyOf(data, length);
+            recycle(frame);
+            return data;
+        }
+        frame.mInUse = false;
+        frame.mRefCount = 0;
+        return data;
+    }
+
+    synchronized void clear() {
+        mFrames.clear();
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Decides which camera frames are analyzed at all, before any conversion work is spent on them.
+ *
+ * <p>Frames are let through no more often than the target frame rate allows. In adaptive mode
+ * they are also spaced by the time the frame listener has recently taken to return, so a slow
+ * listener is fed about as fast as it can consume.</p>
+ */
+class FrameRateLimiter {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Weight of a new sample in the average processing time is 1 / 2^AVERAGE_SHIFT.
+     */
+    private static final int AVERAGE_SHIFT = 3;
+
+    private float mTargetFps;
+
+    private long mTargetInterval;
+
+    private boolean mAdaptive;
+
+    private long mAverageProcessingNanos;
+
+    private long mNextDue;
+
+    private boolean mAcceptedAny;
+
+    private long mSkippedCount;
+
+    /**
+     * @param fps The highest rate at which frames are analyzed, or 0 for no limit.
+     */
+    synchronized void setTargetFps(float fps) {
+        mTargetFps = Math.max(fps, 0f);
+        mTargetInterval = mTargetFps > 0f ? (long) (NANOS_PER_SECOND / mTargetFps) : 0L;
+    }
+
+    synchronized float getTargetFps() {
+        return mTargetFps;
+    }
+
+    synchronized void setAdaptive(boolean adaptive) {
+        mAdaptive = adaptive;
+    }
+
+    synchronized boolean isAdaptive() {
+        return mAdaptive;
+    }
+
+    /**
+     * Called by the camera thread for each new frame.
+     *
+     * @param nowNanos The current {@link System#nanoTime()}.
+     * @return {@code false} if the frame should be skipped without being converted.
+     */
+    synchronized boolean accept(long nowNanos) {
+        long interval = mTargetInterval;
+        if (mAdaptive) {
+            interval = Math.max(interval, mAverageProcessingNanos);
+        }
+        if (mAcceptedAny && nowNanos - mNextDue < 0) {
+            mSkippedCount++;
+            return false;
+        }
+        // Keep to the schedule rather than to the frame that happened to arrive, or frames
+        // arriving just after it would lower the rate; start over after a long pause
+        long base = mAcceptedAny && nowNanos - mNextDue < interval ? mNextDue : nowNanos;
+        mAcceptedAny = true;
+        mNextDue = base + interval;
+        return true;
+    }
+
+    /**
+     * Called once the frame listener returns.
+     *
+     * @param durationNanos How long the listener took.
+     */
+    synchronized void onProcessed(long durationNanos) {
+        if (mAverageProcessingNanos == 0L) {
+            mAverageProcessingNanos = durationNanos;
+        } else {
+            mAverageProcessingNanos += (durationNanos - mAverageProcessingNanos) >> AVERAGE_SHIFT;
+        }
+    }
+
+    synchronized long getAverageProcessingNanos() {
+        return mAverageProcessingNanos;
+    }
+
+    /**
+     * @return The number of frames skipped at the source.
+     */
+    synchronized long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+}
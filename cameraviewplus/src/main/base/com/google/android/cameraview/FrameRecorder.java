@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the frames it receives to a file, raw and with their timing, to be played back later
+ * by {@link FrameRecording} without a camera.
+ *
+ * <p>Register it as a frame consumer and {@link #close()} it when done; the file is not
+ * readable before that. The frame data goes straight into memory-mapped chunks of the file.</p>
+ *
+ * <p>The file starts with a header of {@link #HEADER_SIZE} bytes: the magic number, the
+ * version, the frame count and the offset of the index. The frame data follows, then the index
+ * with one entry of {@link #INDEX_ENTRY_SIZE} bytes per frame: the data offset, timestamp,
+ * sequence number, width, height, format and rotation. All numbers are little endian.</p>
+ */
+public class FrameRecorder implements CameraViewImpl.OnFrameAvailableListener, Closeable {
+
+    static final int MAGIC = 0x46505643; // "CVPF"
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    static final int INDEX_ENTRY_SIZE = 40;
+
+    private static final int CHUNK_SIZE = 32 * 1024 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+
+    private MappedByteBuffer mChunk;
+    private long mChunkOffset;
+
+    /**
+     * Where the next frame goes.
+     */
+    private long mDataEnd = HEADER_SIZE;
+
+    private ByteBuffer mIndex = newIndex(256);
+
+    private int mFrameCount;
+
+    private IOException mError;
+
+    private boolean mClosed;
+
+    /**
+     * @param file Created, or truncated if it exists.
+     */
+    public FrameRecorder(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+    }
+
+    /**
+     * Appends {@code frame} to the file and releases it. Frames that arrive after
+     * {@link #close()} or a write error are only released.
+     */
+    @Override
+    public synchronized void onFrameAvailable(Frame frame) {
+        try {
+            if (!mClosed && mError == null) {
+                write(frame);
+            }
+        } catch (IOException e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+            mError = e;
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void write(Frame frame) throws IOException {
+        int length = Frame.dataSize(frame.getWidth(), frame.getHeight(), frame.getFormat());
+        if (mChunk == null || mDataEnd + length > mChunkOffset + mChunk.capacity()) {
+            mChunkOffset = mDataEnd;
+            mChunk = mChannel.map(FileChannel.MapMode.READ_WRITE, mChunkOffset,
+                    Math.max(CHUNK_SIZE, length));
+        }
+        mChunk.position((int) (mDataEnd - mChunkOffset));
+        mChunk.put(frame.getBuffer());
+
+        if (mIndex.remaining() < INDEX_ENTRY_SIZE) {
+            ByteBuffer index = newIndex(mIndex.capacity() / INDEX_ENTRY_SIZE * 2);
+            mIndex.flip();
+            index.put(mIndex);
+            mIndex = index;
+        }
+        FrameMetadata metadata = frame.getMetadata();
+        mIndex.putLong(mDataEnd)
+                .putLong(metadata.getTimestamp())
+                .putLong(metadata.getSequenceNumber())
+                .putInt(frame.getWidth())
+                .putInt(frame.getHeight())
+                .putInt(frame.getFormat())
+                .putInt(frame.getRotationDegrees());
+        mDataEnd += length;
+        mFrameCount++;
+    }
+
+    /**
+     * @return The number of frames written so far.
+     */
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Writes the index and the header and closes the file.
+     *
+     * @throws IOException If any frame could not be written; the file is then left unreadable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) return;
+        mClosed = true;
+        try {
+            if (mChunk != null) {
+                mChunk.force();
+                mChunk = null;
+            }
+            if (mError != null) {
+                throw mError;
+            }
+            mIndex.flip();
+            while (mIndex.hasRemaining()) {
+                mChannel.write(mIndex, mDataEnd + mIndex.position());
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(mFrameCount)
+                    .putInt(0)
+                    .putLong(mDataEnd);
+            header.clear();
+            while (header.hasRemaining()) {
+                mChannel.write(header, header.position());
+            }
+            // Cut off the unused end of the last chunk
+            mChannel.truncate(mDataEnd + (long) mFrameCount * INDEX_ENTRY_SIZE);
+            mChannel.force(false);
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private static ByteBuffer newIndex(int entries) {
+        return ByteBuffer.allocate(entries * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file written by {@link FrameRecorder}, opened for reading. The frame data is memory-mapped
+ * a window at a time; the index is read into memory up front.
+ *
+ * <p>Plain Java, so recordings can be read and replayed on a machine without a camera.</p>
+ */
+public class FrameRecording implements Closeable {
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mFrameCount;
+    private final ByteBuffer mIndex;
+
+    private MappedByteBuffer mWindow;
+    private long mWindowOffset;
+
+    /**
+     * @throws IOException If the file cannot be read or was not closed by its recorder.
+     */
+    public FrameRecording(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(FrameRecorder.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            if (header.getInt(0) != FrameRecorder.MAGIC) {
+                throw new IOException("Not a frame recording: " + file);
+            }
+            if (header.getInt(4) != FrameRecorder.VERSION) {
+                throw new IOException("Unsupported frame recording version " + header.getInt(4));
+            }
+            mFrameCount = header.getInt(8);
+            long indexOffset = header.getLong(16);
+            mIndex = ByteBuffer.allocate(mFrameCount * FrameRecorder.INDEX_ENTRY_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readFully(mIndex, indexOffset);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Frame recording is truncated");
+            }
+        }
+        buffer.clear();
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return The timestamp the frame had when it was recorded, in nanoseconds.
+     */
+    public long getTimestamp(int index) {
+        return mIndex.getLong(entry(index) + 8);
+    }
+
+    public long getSequenceNumber(int index) {
+        return mIndex.getLong(entry(index) + 16);
+    }
+
+    public int getWidth(int index) {
+        return mIndex.getInt(entry(index) + 24);
+    }
+
+    public int getHeight(int index) {
+        return mIndex.getInt(entry(index) + 28);
+    }
+
+    /**
+     * @return {@link CameraView#FRAME_FORMAT_NV21} or {@link CameraView#FRAME_FORMAT_LUMA}.
+     */
+    public int getFormat(int index) {
+        return mIndex.getInt(entry(index) + 32);
+    }
+
+    public int getRotationDegrees(int index) {
+        return mIndex.getInt(entry(index) + 36);
+    }
+
+    /**
+     * @return The number of data bytes of the frame.
+     */
+    public int getDataSize(int index) {
+        return Frame.dataSize(getWidth(index), getHeight(index), getFormat(index));
+    }
+
+    /**
+     * @return The data of the frame, read-only and straight from the mapped file. Valid until
+     * the recording is closed.
+     */
+    public synchronized ByteBuffer getData(int index) throws IOException {
+        long offset = mIndex.getLong(entry(index));
+        int length = getDataSize(index);
+        if (mWindow == null || offset < mWindowOffset
+                || offset + length > mWindowOffset + mWindow.capacity()) {
+            mWindowOffset = offset;
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(Math.max(WINDOW_SIZE, length), mChannel.size() - offset));
+        }
+        ByteBuffer data = mWindow.duplicate();
+        data.position((int) (offset - mWindowOffset));
+        data.limit(data.position() + length);
+        return data.slice();
+    }
+
+    /**
+     * Copies the data of the frame into {@code out}, which must hold at least
+     * {@link #getDataSize(int)} bytes.
+     */
+    public void readData(int index, byte[] out) throws IOException {
+        ByteBuffer data = getData(index);
+        data.get(out, 0, data.remaining());
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWindow = null;
+        mFile.close();
+    }
+
+    private int entry(int index) {
+        if (index < 0 || index >= mFrameCount) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + mFrameCount);
+        }
+        return index * FrameRecorder.INDEX_ENTRY_SIZE;
+    }
+
+}
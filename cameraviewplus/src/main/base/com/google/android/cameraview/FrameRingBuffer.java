@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps copies of the most recent frames, to look back at the moment the user tapped the
+ * shutter without waiting for a still capture.
+ *
+ * <p>Register it as a frame consumer. Its buffers are direct, so they do not weigh on the Java
+ * heap, and are all allocated on the first frame: as many as fit in the memory cap. Frames
+ * older than the time window are never returned.</p>
+ *
+ * <p>Times are those of {@link FrameMetadata#getTimestamp()}: the sensor timestamp on Camera2,
+ * {@link System#nanoTime()} on arrival on Camera1. The sensor timestamp follows
+ * {@link System#nanoTime()} on most devices; those that report
+ * {@code SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME} follow
+ * {@code SystemClock.elapsedRealtimeNanos()} instead.</p>
+ */
+public class FrameRingBuffer implements CameraViewImpl.OnFrameAvailableListener {
+
+    /**
+     * A buffered frame, held in place until {@link #release()}. The ring buffer never
+     * overwrites a held frame, so release it as soon as possible.
+     */
+    public class BufferedFrame {
+
+        private final Slot mSlot;
+
+        private boolean mReleased;
+
+        BufferedFrame(Slot slot) {
+            mSlot = slot;
+        }
+
+        /**
+         * @return The frame data, in the format it was delivered in: read-only, in native
+         * byte order, from position 0 to the end of the data.
+         */
+        public ByteBuffer getBuffer() {
+            ByteBuffer buffer = mSlot.mBuffer.asReadOnlyBuffer();
+            buffer.clear();
+            buffer.limit(mSlot.mLength);
+            return buffer.order(ByteOrder.nativeOrder());
+        }
+
+        public int getWidth() {
+            return mSlot.mWidth;
+        }
+
+        public int getHeight() {
+            return mSlot.mHeight;
+        }
+
+        /**
+         * @return {@link CameraView#FRAME_FORMAT_NV21} or {@link CameraView#FRAME_FORMAT_LUMA}.
+         */
+        public int getFormat() {
+            return mSlot.mFormat;
+        }
+
+        public int getRotationDegrees() {
+            return mSlot.mRotationDegrees;
+        }
+
+        public long getTimestamp() {
+            return mSlot.mTimestamp;
+        }
+
+        public long getSequenceNumber() {
+            return mSlot.mSequenceNumber;
+        }
+
+        /**
+         * Lets the ring buffer reuse the frame. The frame must not be used afterwards.
+         */
+        public void release() {
+            synchronized (FrameRingBuffer.this) {
+                if (!mReleased) {
+                    mReleased = true;
+                    mSlot.mHolds--;
+                }
+            }
+        }
+
+    }
+
+    private static class Slot {
+
+        final ByteBuffer mBuffer;
+
+        int mLength;
+        int mWidth;
+        int mHeight;
+        int mFormat;
+        int mRotationDegrees;
+        long mTimestamp;
+        long mSequenceNumber;
+
+        /**
+         * Whether the slot holds a complete frame.
+         */
+        boolean mFilled;
+
+        int mHolds;
+
+        Slot(int capacity) {
+            mBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+
+    }
+
+    private final long mMaxBytes;
+
+    private final long mWindowNanos;
+
+    private Slot[] mSlots = new Slot[0];
+
+    /**
+     * The slot to try first for the next frame; the oldest one, once all are filled.
+     */
+    private int mNext;
+
+    private long mNewestTimestamp = Long.MIN_VALUE;
+
+    private long mDroppedCount;
+
+    /**
+     * @param maxBytes    The memory the buffers may take. At least one frame is kept however
+     *                    large it is.
+     * @param windowNanos How far back from the newest frame frames are returned.
+     */
+    public FrameRingBuffer(long maxBytes, long windowNanos) {
+        if (maxBytes <= 0 || windowNanos <= 0) {
+            throw new IllegalArgumentException("Invalid ring buffer: " + maxBytes + " bytes, "
+                    + windowNanos + " ns");
+        }
+        mMaxBytes = maxBytes;
+        mWindowNanos = windowNanos;
+    }
+
+    /**
+     * @return The number of frames the buffers hold, 0 before the first frame.
+     */
+    public synchronized int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * @return The number of frames not buffered because every buffer was held.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    @Override
+    public void onFrameAvailable(Frame frame) {
+        try {
+            int length = Frame.dataSize(frame.getWidth(), frame.getHeight(), frame.getFormat());
+            Slot slot;
+            synchronized (this) {
+                slot = takeSlot(length);
+                if (slot == null) {
+                    mDroppedCount++;
+                    return;
+                }
+            }
+            // Copied outside the lock; the slot is held, so no reader sees it meanwhile
+            ByteBuffer buffer = slot.mBuffer;
+            buffer.clear();
+            ByteBuffer data = frame.getBuffer();
+            data.limit(length);
+            buffer.put(data);
+            FrameMetadata metadata = frame.getMetadata();
+            synchronized (this) {
+                slot.mLength = length;
+                slot.mWidth = frame.getWidth();
+                slot.mHeight = frame.getHeight();
+                slot.mFormat = frame.getFormat();
+                slot.mRotationDegrees = frame.getRotationDegrees();
+                slot.mTimestamp = metadata.getTimestamp();
+                slot.mSequenceNumber = metadata.getSequenceNumber();
+                slot.mFilled = true;
+                slot.mHolds--;
+                mNewestTimestamp = Math.max(mNewestTimestamp, slot.mTimestamp);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Finds the oldest slot nobody holds and holds it for writing, allocating the slots first
+     * if frames do not fit them. Guarded by this.
+     */
+    private Slot takeSlot(int length) {
+        if (mSlots.length == 0 || mSlots[0].mBuffer.capacity() < length) {
+            allocate(length);
+        }
+        for (int i = 0; i < mSlots.length; i++) {
+            Slot slot = mSlots[(mNext + i) % mSlots.length];
+            if (slot.mHolds == 0) {
+                mNext = (mNext + i + 1) % mSlots.length;
+                slot.mFilled = false;
+                slot.mHolds = 1;
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the slots with ones of {@code length} bytes. Held frames keep their old
+     * buffers until released. Guarded by this.
+     */
+    private void allocate(int length) {
+        int count = (int) Math.max(1, Math.min(mMaxBytes / length, Integer.MAX_VALUE));
+        mSlots = new Slot[count];
+        for (int i = 0; i < count; i++) {
+            mSlots[i] = new Slot(length);
+        }
+        mNext = 0;
+        mNewestTimestamp = Long.MIN_VALUE;
+    }
+
+    /**
+     * Holds the buffered frame taken closest to {@code timestampNanos}.
+     *
+     * @return The frame, to be released, or {@code null} if there is none.
+     */
+    public synchronized BufferedFrame nearest(long timestampNanos) {
+        List<BufferedFrame> frames = around(timestampNanos, 1);
+        return frames.isEmpty() ? null : frames.get(0);
+    }
+
+    /**
+     * Holds the {@code count} buffered frames taken closest to {@code timestampNanos}, or
+     * fewer if there are not that many.
+     *
+     * @return The frames in the order they were taken. Each must be released.
+     */
+    public synchronized List<BufferedFrame> around(final long timestampNanos, int count) {
+        List<Slot> candidates = new ArrayList<>();
+        for (Slot slot : mSlots) {
+            if (slot.mFilled && mNewestTimestamp - slot.mTimestamp <= mWindowNanos) {
+                candidates.add(slot);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Slot>() {
+            @Override
+            public int compare(Slot a, Slot b) {
+                long distanceA = Math.abs(a.mTimestamp - timestampNanos);
+                long distanceB = Math.abs(b.mTimestamp - timestampNanos);
+                return distanceA < distanceB ? -1 : (distanceA == distanceB ? 0 : 1);
+            }
+        });
+        List<Slot> chosen = candidates.subList(0, Math.min(count, candidates.size()));
+        Collections.sort(chosen, new Comparator<Slot>() {
+            @Override
+            public int compare(Slot a, Slot b) {
+                return a.mTimestamp < b.mTimestamp ? -1 : (a.mTimestamp == b.mTimestamp ? 0 : 1);
+            }
+        });
+        List<BufferedFrame> frames = new ArrayList<>(chosen.size());
+        for (Slot slot : chosen) {
+            slot.mHolds++;
+            frames.add(new BufferedFrame(slot));
+        }
+        return frames;
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.SortedSet;
+
+/**
+ * Immutable rule for picking the size of the frames passed to frame listeners, apart from the
+ * size of the on-screen preview.
+ *
+ * <p>Sizes are compared in landscape, the way the sensor reports them, so a target of
+ * 240x320 is the same as 320x240.</p>
+ */
+public final class FrameSizePolicy {
+
+    /** The largest preview size. This is the default. */
+    public static final int MODE_LARGEST = 0;
+
+    /** The size closest to a target width and height. */
+    public static final int MODE_CLOSEST = 1;
+
+    /** The largest size with at most a given number of pixels. */
+    public static final int MODE_MAX_PIXELS = 2;
+
+    /** The smallest size at least as wide and as high as a target. */
+    public static final int MODE_AT_LEAST = 3;
+
+    private static final FrameSizePolicy LARGEST =
+            new FrameSizePolicy(MODE_LARGEST, 0, 0, 0, 1);
+
+    private final int mMode;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int mMaxPixels;
+
+    private final int mAlignment;
+
+    private FrameSizePolicy(int mode, int width, int height, int maxPixels, int alignment) {
+        mMode = mode;
+        mWidth = Math.max(width, height);
+        mHeight = Math.min(width, height);
+        mMaxPixels = maxPixels;
+        mAlignment = alignment;
+    }
+
+    /**
+     * Frames are as large as the preview allows. This is the default.
+     */
+    public static FrameSizePolicy largest() {
+        return LARGEST;
+    }
+
+    /**
+     * Frames are the size closest to {@code width} by {@code height}.
+     */
+    public static FrameSizePolicy closestTo(int width, int height) {
+        checkSize(width, height);
+        return new FrameSizePolicy(MODE_CLOSEST, width, height, 0, 1);
+    }
+
+    /**
+     * Frames are the largest size with at most {@code pixels} pixels, or the smallest size if
+     * all are larger.
+     */
+    public static FrameSizePolicy maxPixels(int pixels) {
+        if (pixels <= 0) {
+            throw new IllegalArgumentException("Pixel count must be positive: " + pixels);
+        }
+        return new FrameSizePolicy(MODE_MAX_PIXELS, 0, 0, pixels, 1);
+    }
+
+    /**
+     * Frames are the smallest size at least {@code width} by {@code height}, or the largest
+     * size if none is that large.
+     */
+    public static FrameSizePolicy atLeast(int width, int height) {
+        checkSize(width, height);
+        return new FrameSizePolicy(MODE_AT_LEAST, width, height, 0, 1);
+    }
+
+    /**
+     * Returns a copy of this policy that prefers sizes whose width and height are multiples of
+     * {@code alignment}, typically 16 or 32 to suit vectorized or hardware processing. Other
+     * sizes are used only if none is aligned.
+     */
+    public FrameSizePolicy aligned(int alignment) {
+        if (alignment <= 0) {
+            throw new IllegalArgumentException("Alignment must be positive: " + alignment);
+        }
+        return new FrameSizePolicy(mMode, mWidth, mHeight, mMaxPixels, alignment);
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * @return The longer side of the target size, 0 if the mode has none.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return The shorter side of the target size, 0 if the mode has none.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return The pixel budget of {@link #MODE_MAX_PIXELS}, 0 for other modes.
+     */
+    public int getMaxPixels() {
+        return mMaxPixels;
+    }
+
+    public int getAlignment() {
+        return mAlignment;
+    }
+
+    /**
+     * Picks one of {@code sizes}, which must not be empty.
+     *
+     * @param sizes The candidates, in landscape and in ascending order of area.
+     */
+    Size select(SortedSet<Size> sizes) {
+        Size chosen = null;
+        if (mAlignment > 1) {
+            chosen = select(sizes, true);
+        }
+        return chosen != null ? chosen : select(sizes, false);
+    }
+
+    private Size select(SortedSet<Size> sizes, boolean alignedOnly) {
+        Size chosen = null;
+        Size smallest = null;
+        long bestDistance = Long.MAX_VALUE;
+        for (Size size : sizes) {
+            int width = size.getWidth();
+            int height = size.getHeight();
+            if (alignedOnly && (width % mAlignment != 0 || height % mAlignment != 0)) {
+                continue;
+            }
+            if (smallest == null) {
+                smallest = size;
+            }
+            switch (mMode) {
+                case MODE_CLOSEST:
+                    long distance = (long) Math.abs(width - mWidth) + Math.abs(height - mHeight);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        chosen = size;
+                    }
+                    break;
+                case MODE_MAX_PIXELS:
+                    if ((long) width * height <= mMaxPixels) {
+                        chosen = size;
+                    }
+                    break;
+                case MODE_AT_LEAST:
+                    if (width >= mWidth && height >= mHeight) {
+                        return size;
+                    }
+                    chosen = size;
+                    break;
+                default:
+                    chosen = size;
+                    break;
+            }
+        }
+        return chosen != null ? chosen : smallest;
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        }
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof FrameSizePolicy) {
+            FrameSizePolicy policy = (FrameSizePolicy) o;
+            return mMode == policy.mMode && mWidth == policy.mWidth
+                    && mHeight == policy.mHeight && mMaxPixels == policy.mMaxPixels
+                    && mAlignment == policy.mAlignment;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return (((mMode * 31 + mWidth) * 31 + mHeight) * 31 + mMaxPixels) * 31 + mAlignment;
+    }
+
+    @Override
+    public String toString() {
+        String alignment = mAlignment > 1 ? " aligned to " + mAlignment : "";
+        switch (mMode) {
+            case MODE_CLOSEST:
+                return "CLOSEST(" + mWidth + "x" + mHeight + ")" + alignment;
+            case MODE_MAX_PIXELS:
+                return "MAX_PIXELS(" + mMaxPixels + ")" + alignment;
+            case MODE_AT_LEAST:
+                return "AT_LEAST(" + mWidth + "x" + mHeight + ")" + alignment;
+            default:
+                return "LARGEST" + alignment;
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.Arrays;
+
+/**
+ * Luma statistics of a preview frame: mean, histogram and the mean of each tile of a coarse
+ * grid. Enough for exposure checks without touching the pixels.
+ */
+public class FrameStatistics {
+
+    private static final int LEVELS = 256;
+
+    private final int[] mHistogram = new int[LEVELS];
+
+    private int mWidth;
+    private int mHeight;
+    private int mColumns;
+    private int mRows;
+
+    /**
+     * Where each tile column starts, plus the end of the last one.
+     */
+    private int[] mColumnBounds = new int[0];
+
+    private long[] mTileSums = new long[0];
+
+    private long mSum;
+
+    FrameStatistics() {
+    }
+
+    /**
+     * @return The mean luma of the frame, from 0 to 255.
+     */
+    public float getMeanLuma() {
+        long pixels = (long) mWidth * mHeight;
+        return pixels == 0 ? 0f : (float) mSum / pixels;
+    }
+
+    /**
+     * @return How many pixels have each luma value, indexed by value. Shared; do not modify.
+     */
+    public int[] getHistogram() {
+        return mHistogram;
+    }
+
+    public int getGridColumns() {
+        return mColumns;
+    }
+
+    public int getGridRows() {
+        return mRows;
+    }
+
+    /**
+     * @return The mean luma of the tile at {@code column} and {@code row} of the grid, from
+     * the top left.
+     */
+    public float getTileMeanLuma(int column, int row) {
+        int top = tileRowStart(row);
+        int pixels = (mColumnBounds[column + 1] - mColumnBounds[column])
+                * (tileRowStart(row + 1) - top);
+        return pixels == 0 ? 0f : (float) mTileSums[row * mColumns + column] / pixels;
+    }
+
+    /**
+     * Clears the statistics for a new frame. The grid is limited to one tile per pixel.
+     */
+    void reset(int width, int height, int columns, int rows) {
+        columns = Math.max(1, Math.min(columns, width));
+        rows = Math.max(1, Math.min(rows, height));
+        if (columns != mColumns || width != mWidth) {
+            mColumnBounds = new int[columns + 1];
+            for (int i = 0; i <= columns; i++) {
+                mColumnBounds[i] = i * width / columns;
+            }
+        }
+        if (mTileSums.length != columns * rows) {
+            mTileSums = new long[columns * rows];
+        } else {
+            Arrays.fill(mTileSums, 0);
+        }
+        Arrays.fill(mHistogram, 0);
+        mWidth = width;
+        mHeight = height;
+        mColumns = columns;
+        mRows = rows;
+        mSum = 0;
+    }
+
+    /**
+     * Adds row {@code row} of the luma plane, which starts at {@code offset} in {@code luma}.
+     * Meant to be called right after the row is written, while it is in cache.
+     */
+    void addRow(byte[] luma, int offset, int row) {
+        int[] histogram = mHistogram;
+        int tileBase = (int) ((long) row * mRows / mHeight) * mColumns;
+        long rowSum = 0;
+        for (int column = 0; column < mColumns; column++) {
+            int end = offset + mColumnBounds[column + 1];
+            long tileSum = 0;
+            for (int i = offset + mColumnBounds[column]; i < end; i++) {
+                int value = luma[i] & 0xff;
+                histogram[value]++;
+                tileSum += value;
+            }
+            mTileSums[tileBase + column] += tileSum;
+            rowSum += tileSum;
+        }
+        mSum += rowSum;
+    }
+
+    /**
+     * Computes the statistics of the luma plane at the start of {@code luma}.
+     */
+    void compute(byte[] luma) {
+        for (int row = 0, offset = 0; row < mHeight; row++, offset += mWidth) {
+            addRow(luma, offset, row);
+        }
+    }
+
+    /**
+     * @return The first pixel row of tile row {@code row}; rows are assigned to tiles the way
+     * {@link #addRow} does.
+     */
+    private int tileRowStart(int row) {
+        return (int) (((long) row * mHeight + mRows - 1) / mRows);
+    }
+
+}
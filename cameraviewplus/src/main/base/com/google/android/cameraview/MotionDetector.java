@@ -0,0 +1,453 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds motion between consecutive luma frames by comparing blocks of a downsampled copy of
+ * each frame with the previous one: the mean absolute difference (SAD per pixel) of every
+ * block is its score, and blocks scoring over a threshold are moving.
+ *
+ * <p>Not thread safe. Frames must be passed in order, from one thread at a time; the
+ * detector keeps its own copy of the previous frame, so they can be released right after.</p>
+ */
+public class MotionDetector {
+
+    /**
+     * A group of adjacent moving blocks.
+     */
+    public static class Region {
+
+        private final int mLeft;
+        private final int mTop;
+        private final int mRight;
+        private final int mBottom;
+        private final int mBlockCount;
+        private final float mScore;
+
+        Region(int left, int top, int right, int bottom, int blockCount, float score) {
+            mLeft = left;
+            mTop = top;
+            mRight = right;
+            mBottom = bottom;
+            mBlockCount = blockCount;
+            mScore = score;
+        }
+
+        /**
+         * @return The left edge of the region, in pixels of the full frame.
+         */
+        public int getLeft() {
+            return mLeft;
+        }
+
+        public int getTop() {
+            return mTop;
+        }
+
+        /**
+         * @return The right edge of the region, exclusive.
+         */
+        public int getRight() {
+            return mRight;
+        }
+
+        /**
+         * @return The bottom edge of the region, exclusive.
+         */
+        public int getBottom() {
+            return mBottom;
+        }
+
+        public int getBlockCount() {
+            return mBlockCount;
+        }
+
+        /**
+         * @return The mean score of the blocks of the region.
+         */
+        public float getScore() {
+            return mScore;
+        }
+
+        @Override
+        public String toString() {
+            return "Region(" + mLeft + ", " + mTop + " - " + mRight + ", " + mBottom
+                    + ", score " + mScore + ")";
+        }
+
+    }
+
+    /**
+     * The motion found in one frame.
+     */
+    public static class Result {
+
+        private final boolean mHasReference;
+        private final int mColumns;
+        private final int mRows;
+        private final float[] mBlockScores;
+        private final float mThreshold;
+        private final int mMovingBlockCount;
+        private final List<Region> mRegions;
+
+        Result(boolean hasReference, int columns, int rows, float[] blockScores, float threshold,
+               int movingBlockCount, List<Region> regions) {
+            mHasReference = hasReference;
+            mColumns = columns;
+            mRows = rows;
+            mBlockScores = blockScores;
+            mThreshold = threshold;
+            mMovingBlockCount = movingBlockCount;
+            mRegions = regions;
+        }
+
+        /**
+         * @return {@code false} for the first frame, or the first after a change of size,
+         * which had nothing to be compared with.
+         */
+        public boolean hasReference() {
+            return mHasReference;
+        }
+
+        public int getColumns() {
+            return mColumns;
+        }
+
+        public int getRows() {
+            return mRows;
+        }
+
+        /**
+         * @return The mean absolute luma difference in the block, from 0 to 255.
+         */
+        public float getBlockScore(int column, int row) {
+            return mBlockScores[row * mColumns + column];
+        }
+
+        public boolean isBlockMoving(int column, int row) {
+            return getBlockScore(column, row) > mThreshold;
+        }
+
+        public int getMovingBlockCount() {
+            return mMovingBlockCount;
+        }
+
+        /**
+         * @return The fraction of blocks that are moving, from 0 to 1.
+         */
+        public float getMotionScore() {
+            return mBlockScores.length == 0 ? 0f : (float) mMovingBlockCount / mBlockScores.length;
+        }
+
+        /**
+         * @return The groups of adjacent moving blocks, largest first.
+         */
+        public List<Region> getRegions() {
+            return mRegions;
+        }
+
+    }
+
+    private int mBlockSize = 8;
+
+    private int mDownsampling = 4;
+
+    private float mThreshold = 12f;
+
+    private byte[] mPrevious = new byte[0];
+    private byte[] mCurrent = new byte[0];
+
+    /**
+     * Size of the downsampled frames in {@link #mPrevious}, 0 if there is none.
+     */
+    private int mSampledWidth;
+    private int mSampledHeight;
+
+    private long[] mBlockSums = new long[0];
+
+    private int[] mColumnBounds = new int[0];
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    /**
+     * Sets the side of a block, in downsampled pixels. Default is 8.
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        mBlockSize = blockSize;
+        reset();
+    }
+
+    public int getDownsampling() {
+        return mDownsampling;
+    }
+
+    /**
+     * Sets how many frame pixels, across and down, make one downsampled pixel. Default is 4.
+     * A power of two lets {@link #detect(Frame)} use the pyramid of the frame, if any.
+     */
+    public void setDownsampling(int downsampling) {
+        if (downsampling <= 0) {
+            throw new IllegalArgumentException("Downsampling must be positive: " + downsampling);
+        }
+        mDownsampling = downsampling;
+        reset();
+    }
+
+    public float getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * Sets the score over which a block is moving. Default is 12, above typical sensor noise.
+     */
+    public void setThreshold(float threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * Forgets the previous frame; the next one is compared with nothing.
+     */
+    public void reset() {
+        mSampledWidth = 0;
+        mSampledHeight = 0;
+    }
+
+    /**
+     * Compares the luma of {@code frame} with that of the previous frame. Uses a level of
+     * the frame's pyramid instead of downsampling when there is a matching one, and reads a
+     * direct frame in place.
+     */
+    public Result detect(Frame frame) {
+        int level = Integer.numberOfTrailingZeros(mDownsampling);
+        if (mDownsampling == 1 << level && level > 0 && level <= frame.getPyramidLevelCount()) {
+            return detect(frame.getPyramidLevel(level), frame.getPyramidWidth(level),
+                    frame.getPyramidHeight(level), 1, mDownsampling, frame.getWidth(),
+                    frame.getHeight());
+        }
+        if (frame.isDirect()) {
+            int width = frame.getWidth();
+            int height = frame.getHeight();
+            int sampledWidth = Math.max(1, width / mDownsampling);
+            int sampledHeight = Math.max(1, height / mDownsampling);
+            sample(frame.getBuffer(), width, mDownsampling, sampledWidth, sampledHeight,
+                    prepareCurrent(sampledWidth, sampledHeight));
+            return compare(sampledWidth, sampledHeight, mDownsampling, width, height);
+        }
+        return detect(frame.getData(), frame.getWidth(), frame.getHeight());
+    }
+
+    /**
+     * Compares a luma plane, for example the start of NV21 data, with the previous one.
+     */
+    public Result detect(byte[] luma, int width, int height) {
+        return detect(luma, width, height, mDownsampling, mDownsampling, width, height);
+    }
+
+    /**
+     * @param step  Distance in {@code luma} between two samples.
+     * @param scale Frame pixels per sample, to map blocks back onto the frame.
+     */
+    private Result detect(byte[] luma, int width, int height, int step, int scale,
+                          int frameWidth, int frameHeight) {
+        int sampledWidth = Math.max(1, width / step);
+        int sampledHeight = Math.max(1, height / step);
+        sample(luma, width, step, sampledWidth, sampledHeight,
+                prepareCurrent(sampledWidth, sampledHeight));
+        return compare(sampledWidth, sampledHeight, scale, frameWidth, frameHeight);
+    }
+
+    private byte[] prepareCurrent(int sampledWidth, int sampledHeight) {
+        int size = sampledWidth * sampledHeight;
+        if (mCurrent.length != size) {
+            mCurrent = new byte[size];
+        }
+        return mCurrent;
+    }
+
+    /**
+     * Compares the samples in {@link #mCurrent} with the previous ones, then keeps them as the
+     * reference.
+     */
+    private Result compare(int sampledWidth, int sampledHeight, int scale, int frameWidth,
+                           int frameHeight) {
+        int columns = (sampledWidth + mBlockSize - 1) / mBlockSize;
+        int rows = (sampledHeight + mBlockSize - 1) / mBlockSize;
+        boolean hasReference = sampledWidth == mSampledWidth && sampledHeight == mSampledHeight;
+        float[] scores = new float[columns * rows];
+        int moving = 0;
+        List<Region> regions;
+        if (hasReference) {
+            sumDifferences(sampledWidth, sampledHeight, columns, rows);
+            for (int row = 0; row < rows; row++) {
+                int blockHeight = Math.min(mBlockSize, sampledHeight - row * mBlockSize);
+                for (int column = 0; column < columns; column++) {
+                    int blockWidth = Math.min(mBlockSize, sampledWidth - column * mBlockSize);
+                    int block = row * columns + column;
+                    scores[block] = (float) mBlockSums[block] / (blockWidth * blockHeight);
+                    if (scores[block] > mThreshold) {
+                        moving++;
+                    }
+                }
+            }
+            regions = moving == 0 ? Collections.<Region>emptyList()
+                    : findRegions(scores, columns, rows, scale * mBlockSize, frameWidth,
+                    frameHeight);
+        } else {
+            regions = Collections.emptyList();
+        }
+
+        // The current frame is the reference for the next one
+        byte[] previous = mPrevious;
+        mPrevious = mCurrent;
+        mCurrent = previous;
+        mSampledWidth = sampledWidth;
+        mSampledHeight = sampledHeight;
+        return new Result(hasReference, columns, rows, scores, mThreshold, moving, regions);
+    }
+
+    private static void sample(byte[] luma, int width, int step, int sampledWidth,
+                               int sampledHeight, byte[] output) {
+        if (step == 1) {
+            System.arraycopy(luma, 0, output, 0, sampledWidth * sampledHeight);
+            return;
+        }
+        int out = 0;
+        for (int y = 0; y < sampledHeight; y++) {
+            int in = y * step * width;
+            for (int x = 0; x < sampledWidth; x++) {
+                output[out++] = luma[in];
+                in += step;
+            }
+        }
+    }
+
+    private static void sample(ByteBuffer luma, int width, int step, int sampledWidth,
+                               int sampledHeight, byte[] output) {
+        int out = 0;
+        for (int y = 0; y < sampledHeight; y++) {
+            int in = y * step * width;
+            for (int x = 0; x < sampledWidth; x++) {
+                output[out++] = luma.get(in);
+                in += step;
+            }
+        }
+    }
+
+    /**
+     * Fills {@link #mBlockSums} with the sum of absolute differences between
+     * {@link #mCurrent} and {@link #mPrevious} in each block, row by row.
+     */
+    private void sumDifferences(int width, int height, int columns, int rows) {
+        if (mBlockSums.length != columns * rows) {
+            mBlockSums = new long[columns * rows];
+        }
+        if (mColumnBounds.length != columns + 1) {
+            mColumnBounds = new int[columns + 1];
+        }
+        for (int column = 0; column <= columns; column++) {
+            mColumnBounds[column] = Math.min(column * mBlockSize, width);
+        }
+        long[] sums = mBlockSums;
+        Arrays.fill(sums, 0);
+        byte[] current = mCurrent;
+        byte[] previous = mPrevious;
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * width;
+            int blockBase = (y / mBlockSize) * columns;
+            for (int column = 0; column < columns; column++) {
+                int end = rowStart + mColumnBounds[column + 1];
+                int sum = 0;
+                for (int i = rowStart + mColumnBounds[column]; i < end; i++) {
+                    sum += Math.abs((current[i] & 0xff) - (previous[i] & 0xff));
+                }
+                sums[blockBase + column] += sum;
+            }
+        }
+    }
+
+    /**
+     * Groups the moving blocks into 4-connected regions.
+     *
+     * @param blockPixels The side of a block in frame pixels.
+     */
+    private List<Region> findRegions(float[] scores, int columns, int rows, int blockPixels,
+                                     int frameWidth, int frameHeight) {
+        List<Region> regions = new ArrayList<>();
+        boolean[] visited = new boolean[scores.length];
+        int[] stack = new int[scores.length];
+        for (int start = 0; start < scores.length; start++) {
+            if (visited[start] || scores[start] <= mThreshold) {
+                continue;
+            }
+            int minColumn = columns;
+            int minRow = rows;
+            int maxColumn = -1;
+            int maxRow = -1;
+            int count = 0;
+            float total = 0f;
+            int top = 0;
+            stack[top++] = start;
+            visited[start] = true;
+            while (top > 0) {
+                int block = stack[--top];
+                int column = block % columns;
+                int row = block / columns;
+                minColumn = Math.min(minColumn, column);
+                maxColumn = Math.max(maxColumn, column);
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+                count++;
+                total += scores[block];
+                if (column > 0) top = visit(block - 1, scores, visited, stack, top);
+                if (column < columns - 1) top = visit(block + 1, scores, visited, stack, top);
+                if (row > 0) top = visit(block - columns, scores, visited, stack, top);
+                if (row < rows - 1) top = visit(block + columns, scores, visited, stack, top);
+            }
+            regions.add(new Region(minColumn * blockPixels, minRow * blockPixels,
+                    Math.min((maxColumn + 1) * blockPixels, frameWidth),
+                    Math.min((maxRow + 1) * blockPixels, frameHeight), count, total / count));
+        }
+        Collections.sort(regions, new Comparator<Region>() {
+            @Override
+            public int compare(Region a, Region b) {
+                return b.mBlockCount - a.mBlockCount;
+            }
+        });
+        return regions;
+    }
+
+    private int visit(int block, float[] scores, boolean[] visited, int[] stack, int top) {
+        if (!visited[block] && scores[block] > mThreshold) {
+            visited[block] = true;
+            stack[top++] = block;
+        }
+        return top;
+    }
+
+}
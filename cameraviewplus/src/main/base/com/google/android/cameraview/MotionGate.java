@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * A frame listener that runs a {@link MotionDetector} on every frame and passes on to an
+ * expensive listener only the frames that show motion. The others are released right away,
+ * so on a static scene the expensive listener costs nothing.
+ *
+ * <p>Register it like any {@link CameraViewImpl.OnFrameAvailableListener}. With the pyramid
+ * turned on, the detector reads the matching pyramid level instead of downsampling.</p>
+ */
+public class MotionGate implements CameraViewImpl.OnFrameAvailableListener {
+
+    public interface OnMotionListener {
+        /**
+         * Called for every frame, before it is passed on or released.
+         */
+        void onMotion(Frame frame, MotionDetector.Result result);
+    }
+
+    private final MotionDetector mDetector;
+
+    private final CameraViewImpl.OnFrameAvailableListener mListener;
+
+    private volatile float mMinMotionScore;
+
+    private volatile OnMotionListener mOnMotionListener;
+
+    private volatile long mPassedCount;
+
+    private volatile long mBlockedCount;
+
+    /**
+     * @param listener Gets the frames with motion, and must release them.
+     */
+    public MotionGate(MotionDetector detector, CameraViewImpl.OnFrameAvailableListener listener) {
+        mDetector = detector;
+        mListener = listener;
+    }
+
+    public MotionDetector getDetector() {
+        return mDetector;
+    }
+
+    public float getMinMotionScore() {
+        return mMinMotionScore;
+    }
+
+    /**
+     * Sets the {@link MotionDetector.Result#getMotionScore() motion score} a frame must exceed
+     * to be passed on. Default is 0: any moving block will do.
+     */
+    public void setMinMotionScore(float minMotionScore) {
+        mMinMotionScore = minMotionScore;
+    }
+
+    public void setOnMotionListener(OnMotionListener listener) {
+        mOnMotionListener = listener;
+    }
+
+    /**
+     * @return The number of frames passed on so far.
+     */
+    public long getPassedCount() {
+        return mPassedCount;
+    }
+
+    /**
+     * @return The number of frames released for lack of motion so far.
+     */
+    public long getBlockedCount() {
+        return mBlockedCount;
+    }
+
+    @Override
+    public void onFrameAvailable(Frame frame) {
+        MotionDetector.Result result = mDetector.detect(frame);
+        OnMotionListener onMotionListener = mOnMotionListener;
+        if (onMotionListener != null) {
+            onMotionListener.onMotion(frame, result);
+        }
+        // A frame with nothing to compare with may well be new to the listener
+        if (!result.hasReference() || result.getMotionScore() > mMinMotionScore) {
+            mPassedCount++;
+            mListener.onFrameAvailable(frame);
+        } else {
+            mBlockedCount++;
+            frame.release();
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Rotates and mirrors NV21 (or luma only) frames into another buffer.
+ *
+ * <p>Mirroring flips the frame horizontally before it is rotated. Quarter turns are done tile
+ * by tile, so that both the rows read and the columns written stay in cache.</p>
+ */
+public final class Nv21Rotator {
+
+    /**
+     * Tiles of this many pixels square keep the rows read and the cache lines written, 64
+     * of each, well within L1 cache.
+     */
+    private static final int TILE = 64;
+
+    private Nv21Rotator() {
+    }
+
+    /**
+     * Rotates a {@code width} by {@code height} NV21 frame clockwise.
+     *
+     * @param clockwiseDegrees A multiple of 90, negative values included. Frames turned by a
+     *                         quarter come out {@code height} by {@code width}.
+     * @param dst              Receives the frame. Must not be {@code src}.
+     */
+    public static void rotate(byte[] src, int width, int height, int clockwiseDegrees,
+                              boolean mirror, byte[] dst) {
+        rotatePlane(src, 0, width, height, 1, clockwiseDegrees, mirror, dst, 0);
+        int lumaSize = width * height;
+        rotatePlane(src, lumaSize, width / 2, height / 2, 2, clockwiseDegrees, mirror,
+                dst, lumaSize);
+    }
+
+    /**
+     * Same as {@link #rotate(byte[], int, int, int, boolean, byte[])} for the luma plane
+     * alone.
+     */
+    public static void rotateLuma(byte[] src, int width, int height, int clockwiseDegrees,
+                                  boolean mirror, byte[] dst) {
+        rotatePlane(src, 0, width, height, 1, clockwiseDegrees, mirror, dst, 0);
+    }
+
+    /**
+     * Rotates a plane of {@code w} by {@code h} elements of {@code size} bytes each. Element
+     * (x, y) of the source goes to {@code dstOffset + base + x * stepX + y * stepY}.
+     */
+    static void rotatePlane(byte[] src, int srcOffset, int w, int h, int size,
+                            int clockwiseDegrees, boolean mirror, byte[] dst, int dstOffset) {
+        if (clockwiseDegrees % 90 != 0) {
+            throw new IllegalArgumentException("Not a multiple of 90: " + clockwiseDegrees);
+        }
+        int degrees = ((clockwiseDegrees % 360) + 360) % 360;
+        if (degrees == 0 && !mirror) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, w * h * size);
+            return;
+        }
+        int dw = degrees % 180 == 0 ? w : h;
+        int base;
+        int stepX;
+        int stepY;
+        switch (degrees) {
+            case 0:
+                base = mirror ? w - 1 : 0;
+                stepX = mirror ? -1 : 1;
+                stepY = dw;
+                break;
+            case 90:
+                base = h - 1 + (mirror ? (w - 1) * dw : 0);
+                stepX = mirror ? -dw : dw;
+                stepY = -1;
+                break;
+            case 180:
+                base = (h - 1) * dw + (mirror ? 0 : w - 1);
+                stepX = mirror ? 1 : -1;
+                stepY = -dw;
+                break;
+            default:
+                base = mirror ? 0 : (w - 1) * dw;
+                stepX = mirror ? dw : -dw;
+                stepY = 1;
+                break;
+        }
+        base = dstOffset + base * size;
+        stepX *= size;
+        stepY *= size;
+        for (int ty = 0; ty < h; ty += TILE) {
+            int yEnd = Math.min(ty + TILE, h);
+            for (int tx = 0; tx < w; tx += TILE) {
+                int xEnd = Math.min(tx + TILE, w);
+                for (int y = ty; y < yEnd; y++) {
+                    int s = srcOffset + (y * w + tx) * size;
+                    int d = base + tx * stepX + y * stepY;
+                    if (size == 1) {
+                        for (int x = tx; x < xEnd; x++) {
+                            dst[d] = src[s++];
+                            d += stepX;
+                        }
+                    } else {
+                        for (int x = tx; x < xEnd; x++) {
+                            dst[d] = src[s];
+                            dst[d + 1] = src[s + 1];
+                            s += 2;
+                            d += stepX;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The JPEG of a still picture, as taken by the camera and without any copy.
+ *
+ * <p>On Camera2 the buffer is the direct buffer of the camera's still image, so
+ * {@link #release()} it as soon as possible: the camera can only hold a few pictures that
+ * the app has not released. On Camera1 it wraps the callback array.</p>
+ */
+public class PictureBuffer {
+
+    private final ByteBuffer mBuffer;
+
+    private final int mRotationDegrees;
+
+    private final long mTimestamp;
+
+    private final int mBurstIndex;
+
+    private final int mBurstSize;
+
+    private final AutoCloseable mImage;
+
+    private final AtomicBoolean mReleased = new AtomicBoolean();
+
+    /**
+     * @param jpeg  The picture, from its position to its limit.
+     * @param image What {@code jpeg} belongs to, closed on {@link #release()}. May be
+     *              {@code null}.
+     */
+    PictureBuffer(ByteBuffer jpeg, int rotationDegrees, long timestamp, AutoCloseable image) {
+        this(jpeg, rotationDegrees, timestamp, 0, 1, image);
+    }
+
+    PictureBuffer(ByteBuffer jpeg, int rotationDegrees, long timestamp, int burstIndex,
+                  int burstSize, AutoCloseable image) {
+        mBuffer = jpeg.slice().asReadOnlyBuffer();
+        mRotationDegrees = rotationDegrees;
+        mTimestamp = timestamp;
+        mBurstIndex = burstIndex;
+        mBurstSize = burstSize;
+        mImage = image;
+    }
+
+    /**
+     * @return The JPEG, from position 0 to the limit. Read-only, and not to be used after
+     * {@link #release()}.
+     */
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    public int getRotationDegrees() {
+        return mRotationDegrees;
+    }
+
+    /**
+     * @return The capture time in nanoseconds: the sensor timestamp on Camera2, the shutter
+     * time ({@link System#nanoTime()}) on Camera1.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * @return The position of this picture in its burst, in the order the pictures arrived. 0
+     * for a single picture.
+     */
+    public int getBurstIndex() {
+        return mBurstIndex;
+    }
+
+    /**
+     * @return The number of pictures asked for in the burst, 1 for a single picture.
+     */
+    public int getBurstSize() {
+        return mBurstSize;
+    }
+
+    /**
+     * Gives the picture back to the camera. Calling it again has no effect.
+     */
+    public void release() {
+        if (mReleased.getAndSet(true) || mImage == null) return;
+        try {
+            mImage.close();
+        } catch (Exception e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+        }
+    }
+
+    public boolean isReleased() {
+        return mReleased.get();
+    }
+
+}
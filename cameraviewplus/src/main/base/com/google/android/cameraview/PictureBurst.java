@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The progress of one burst of pictures: when the next shot is due, how many the camera has
+ * captured, and which one is delivered next. Shared by the thread that captures and the one
+ * that delivers.
+ */
+class PictureBurst {
+
+    private final int mSize;
+
+    private final long mIntervalNanos;
+
+    private long mStartNanos;
+
+    private int mStarted;
+
+    private int mCompleted;
+
+    private int mDelivered;
+
+    private int mFailed;
+
+    /**
+     * @param intervalMillis The time from the start of one shot to the start of the next, or 0
+     *                       for as fast as the camera can.
+     */
+    PictureBurst(int size, long intervalMillis) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Burst size must be positive: " + size);
+        }
+        mSize = size;
+        mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMillis));
+    }
+
+    int getSize() {
+        return mSize;
+    }
+
+    boolean isPaced() {
+        return mIntervalNanos > 0;
+    }
+
+    /**
+     * Counts the next shot as started.
+     *
+     * @return {@code false} if every shot has been started already.
+     */
+    synchronized boolean startShot(long nowNanos) {
+        if (mStarted == mSize) return false;
+        if (mStarted == 0) mStartNanos = nowNanos;
+        mStarted++;
+        return true;
+    }
+
+    /**
+     * @return The nanoseconds to wait before starting the next shot, 0 if it is due or late.
+     */
+    synchronized long getDelayNanos(long nowNanos) {
+        if (mStarted == 0) return 0;
+        return Math.max(0, mStartNanos + mStarted * mIntervalNanos - nowNanos);
+    }
+
+    synchronized boolean hasShotsToStart() {
+        return mStarted < mSize;
+    }
+
+    /**
+     * Counts a shot as captured by the camera.
+     *
+     * @param failed Whether the shot produced no picture, so none will be delivered for it.
+     * @return {@code true} if it was the last shot.
+     */
+    synchronized boolean shotCompleted(boolean failed) {
+        mCompleted++;
+        if (failed) mFailed++;
+        return mCompleted == mSize;
+    }
+
+    /**
+     * @return The index of the picture being delivered, in the order they arrive.
+     */
+    synchronized int nextDelivery() {
+        return mDelivered++;
+    }
+
+    /**
+     * @return {@code true} once every shot was captured, and delivered unless it failed.
+     */
+    synchronized boolean isFinished() {
+        return mCompleted == mSize && mDelivered + mFailed >= mSize;
+    }
+
+}
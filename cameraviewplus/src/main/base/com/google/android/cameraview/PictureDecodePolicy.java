@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Immutable rule for the size and orientation of the bitmaps passed to
+ * {@link CameraViewImpl.OnPictureTakenListener}.
+ *
+ * <p>A smaller bitmap is decoded at a reduced sample size straight from the JPEG, then scaled
+ * down the rest of the way, so the full-resolution image is never in memory. Sizes are
+ * compared in landscape, so a target of 1080x1920 is the same as 1920x1080.</p>
+ */
+public final class PictureDecodePolicy {
+
+    /** The full resolution of the picture. This is the default. */
+    public static final int MODE_FULL_SIZE = 0;
+
+    /** The largest size that fits inside a target width and height. */
+    public static final int MODE_FIT_INSIDE = 1;
+
+    /** The largest size with at most a given number of pixels. */
+    public static final int MODE_MAX_PIXELS = 2;
+
+    private static final PictureDecodePolicy FULL_SIZE =
+            new PictureDecodePolicy(MODE_FULL_SIZE, 0, 0, 0, false);
+
+    private final int mMode;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int mMaxPixels;
+
+    private final boolean mUpright;
+
+    private PictureDecodePolicy(int mode, int width, int height, int maxPixels,
+                                boolean upright) {
+        mMode = mode;
+        mWidth = Math.max(width, height);
+        mHeight = Math.min(width, height);
+        mMaxPixels = maxPixels;
+        mUpright = upright;
+    }
+
+    /**
+     * Pictures are decoded at full resolution. This is the default.
+     */
+    public static PictureDecodePolicy fullSize() {
+        return FULL_SIZE;
+    }
+
+    /**
+     * Pictures are scaled down, keeping their aspect ratio, until they fit inside
+     * {@code width} by {@code height}. Smaller pictures are left alone.
+     */
+    public static PictureDecodePolicy fitInside(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+        return new PictureDecodePolicy(MODE_FIT_INSIDE, width, height, 0, false);
+    }
+
+    /**
+     * Pictures are scaled down, keeping their aspect ratio, to at most {@code pixels} pixels.
+     */
+    public static PictureDecodePolicy maxPixels(int pixels) {
+        if (pixels <= 0) {
+            throw new IllegalArgumentException("Pixel count must be positive: " + pixels);
+        }
+        return new PictureDecodePolicy(MODE_MAX_PIXELS, 0, 0, pixels, false);
+    }
+
+    /**
+     * Returns a copy of this policy that also turns pictures upright, so that the listener
+     * gets a rotation of 0. A half turn is done in place; a quarter turn is drawn into a
+     * pooled bitmap, along with any scaling.
+     */
+    public PictureDecodePolicy upright() {
+        return new PictureDecodePolicy(mMode, mWidth, mHeight, mMaxPixels, true);
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * @return The longer side of the target size, 0 if the mode has none.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return The shorter side of the target size, 0 if the mode has none.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return The pixel budget of {@link #MODE_MAX_PIXELS}, 0 for other modes.
+     */
+    public int getMaxPixels() {
+        return mMaxPixels;
+    }
+
+    public boolean isUpright() {
+        return mUpright;
+    }
+
+    /**
+     * @return The factor, at most 1, by which a {@code width} by {@code height} picture is
+     * scaled down.
+     */
+    float getScale(int width, int height) {
+        float scale = 1f;
+        switch (mMode) {
+            case MODE_FIT_INSIDE:
+                scale = Math.min((float) mWidth / Math.max(width, height),
+                        (float) mHeight / Math.min(width, height));
+                break;
+            case MODE_MAX_PIXELS:
+                scale = (float) Math.sqrt((double) mMaxPixels / ((long) width * height));
+                break;
+        }
+        return Math.min(1f, scale);
+    }
+
+    /**
+     * @return The size of one side scaled by {@code scale}, at least 1.
+     */
+    static int scaled(int side, float scale) {
+        return Math.max(1, (int) (side * scale));
+    }
+
+    /**
+     * @return The largest power of two that the decoder can subsample by without going below
+     * {@code scale}.
+     */
+    static int getSampleSize(float scale) {
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        }
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof PictureDecodePolicy) {
+            PictureDecodePolicy policy = (PictureDecodePolicy) o;
+            return mMode == policy.mMode && mWidth == policy.mWidth
+                    && mHeight == policy.mHeight && mMaxPixels == policy.mMaxPixels
+                    && mUpright == policy.mUpright;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return (((mMode * 31 + mWidth) * 31 + mHeight) * 31 + mMaxPixels) * 31
+                + (mUpright ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        String upright = mUpright ? " upright" : "";
+        switch (mMode) {
+            case MODE_FIT_INSIDE:
+                return "FIT_INSIDE(" + mWidth + "x" + mHeight + ")" + upright;
+            case MODE_MAX_PIXELS:
+                return "MAX_PIXELS(" + mMaxPixels + ")" + upright;
+            default:
+                return "FULL_SIZE" + upright;
+        }
+    }
+
+}
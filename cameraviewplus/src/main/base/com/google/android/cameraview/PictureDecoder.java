@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes still pictures into bitmaps as a {@link PictureDecodePolicy} asks, on a thread of
+ * its own.
+ *
+ * <p>The JPEG is decoded at the largest power-of-two sample size that keeps it at least as
+ * big as asked, into a pooled bitmap where possible. The rest of the scaling and any quarter
+ * turn are done by one draw into another pooled bitmap. Mirroring and half turns without
+ * scaling are done in place, a row at a time.</p>
+ */
+final class PictureDecoder {
+
+    /**
+     * Pictures that can wait for the decoder, unless a burst needs more. Each holds a whole
+     * JPEG.
+     */
+    private static final int MAX_PENDING = 4;
+
+    private static final AtomicInteger sPending = new AtomicInteger();
+
+    private static final BitmapPool sPool = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private PictureDecoder() {
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CameraPictureDecode");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Runs {@code task} on the decode thread.
+     *
+     * @param burstSize The size of the burst the picture belongs to, 1 for a single picture. A
+     *                  burst may have all its pictures waiting, so none of them is dropped.
+     * @throws RejectedExecutionException If {@link #MAX_PENDING} pictures, or
+     *                                    {@code burstSize} if more, are already waiting.
+     */
+    static void execute(final Runnable task, int burstSize) {
+        int limit = Math.max(MAX_PENDING, burstSize);
+        if (sPending.incrementAndGet() > limit) {
+            sPending.decrementAndGet();
+            throw new RejectedExecutionException("Too many pictures waiting to be decoded");
+        }
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    sPending.decrementAndGet();
+                    task.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sPending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a bitmap from {@link #decode} back for reuse.
+     */
+    static void release(Bitmap bitmap) {
+        sPool.put(bitmap);
+    }
+
+    /**
+     * @param mirror          Whether to flip the picture horizontally, as for a front camera.
+     * @param rotationDegrees The rotation passed to
+     *                        {@link CameraViewImpl.OnPictureTakenListener}, undone if the
+     *                        policy asks for upright pictures.
+     * @return The picture, or {@code null} if {@code data} could not be decoded.
+     */
+    static Bitmap decode(byte[] data, PictureDecodePolicy policy, boolean mirror,
+                         int rotationDegrees) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) return null;
+
+        float scale = policy.getScale(width, height);
+        int sampleSize = PictureDecodePolicy.getSampleSize(scale);
+        int outWidth = PictureDecodePolicy.scaled(width, scale);
+        int outHeight = PictureDecodePolicy.scaled(height, scale);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        int sampledWidth = (width + sampleSize - 1) / sampleSize;
+        int sampledHeight = (height + sampleSize - 1) / sampleSize;
+        options.inBitmap = sPool.getForDecode(sampledWidth * sampledHeight * 4);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap did not fit after all
+            sPool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        if (bitmap == null) return null;
+
+        int degrees = policy.isUpright() ? ((-rotationDegrees) % 360 + 360) % 360 : 0;
+        if (bitmap.getWidth() != outWidth || bitmap.getHeight() != outHeight
+                || degrees == 90 || degrees == 270) {
+            return transform(bitmap, outWidth, outHeight, mirror, degrees);
+        }
+        flip(bitmap, mirror ^ (degrees == 180), degrees == 180);
+        return bitmap;
+    }
+
+    /**
+     * Draws {@code source}, mirrored first, scaled to {@code width} by {@code height} and
+     * turned clockwise by {@code degrees}, into a pooled bitmap. {@code source} goes back to
+     * the pool.
+     */
+    private static Bitmap transform(Bitmap source, int width, int height, boolean mirror,
+                                    int degrees) {
+        boolean quarterTurn = degrees == 90 || degrees == 270;
+        int outWidth = quarterTurn ? height : width;
+        int outHeight = quarterTurn ? width : height;
+        Bitmap output = sPool.get(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+        output.eraseColor(0);
+        float scaleX = (float) width / source.getWidth();
+        float scaleY = (float) height / source.getHeight();
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(-source.getWidth() / 2f, -source.getHeight() / 2f);
+        matrix.postScale(mirror ? -scaleX : scaleX, scaleY);
+        matrix.postRotate(degrees);
+        matrix.postTranslate(outWidth / 2f, outHeight / 2f);
+        new Canvas(output).drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        sPool.put(source);
+        return output;
+    }
+
+    /**
+     * Flips {@code bitmap} in place. Flipping both ways is a half turn.
+     */
+    private static void flip(Bitmap bitmap, boolean horizontal, boolean vertical) {
+        if (!horizontal && !vertical) return;
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] row = new int[width];
+        int[] otherRow = new int[width];
+        int rows = vertical ? (height + 1) / 2 : height;
+        for (int y = 0; y < rows; y++) {
+            int other = vertical ? height - 1 - y : y;
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            if (horizontal) reverse(row);
+            if (other != y) {
+                bitmap.getPixels(otherRow, 0, width, 0, other, width, 1);
+                if (horizontal) reverse(otherRow);
+                bitmap.setPixels(otherRow, 0, width, 0, y, width, 1);
+            }
+            bitmap.setPixels(row, 0, width, 0, other, width, 1);
+        }
+    }
+
+    private static void reverse(int[] row) {
+        for (int i = 0, j = row.length - 1; i < j; i++, j--) {
+            int pixel = row[i];
+            row[i] = row[j];
+            row[j] = pixel;
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the JPEG of one still picture to a file or channel on a background thread, straight
+ * from the buffer the camera filled.
+ *
+ * <p>Pictures are written one at a time, in the order they were taken. The queue needs no
+ * bound: each waiting picture holds a camera image, and the camera has only a few.</p>
+ */
+class PictureWriter {
+
+    private static ExecutorService sExecutor;
+
+    private final File mFile;
+
+    private final FileChannel mChannel;
+
+    private final CameraViewImpl.OnPictureSavedListener mListener;
+
+    /**
+     * @param file Created, or replaced if it exists.
+     */
+    PictureWriter(File file, CameraViewImpl.OnPictureSavedListener listener) {
+        mFile = file;
+        mChannel = null;
+        mListener = listener;
+    }
+
+    /**
+     * @param channel Written at its position and left open.
+     */
+    PictureWriter(FileChannel channel, CameraViewImpl.OnPictureSavedListener listener) {
+        mFile = null;
+        mChannel = channel;
+        mListener = listener;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CameraPictureWrite");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Writes the remaining bytes of {@code data} on the write thread, then closes
+     * {@code image} and tells the listener, on that thread.
+     *
+     * @param image What {@code data} belongs to, or {@code null}.
+     */
+    void write(final ByteBuffer data, final AutoCloseable image, final int rotationDegrees) {
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                writeNow(data, image, rotationDegrees);
+            }
+        });
+    }
+
+    /**
+     * Tells the listener, on the write thread, that the picture will not be written.
+     */
+    void fail(final Exception e) {
+        if (mListener == null) return;
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onPictureSaveFailed(e);
+            }
+        });
+    }
+
+    void writeNow(ByteBuffer data, AutoCloseable image, int rotationDegrees) {
+        Exception error = null;
+        try {
+            if (mFile != null) {
+                FileOutputStream out = new FileOutputStream(mFile);
+                try {
+                    writeFully(out.getChannel(), data);
+                } finally {
+                    out.close();
+                }
+            } else {
+                writeFully(mChannel, data);
+            }
+        } catch (Exception e) {
+            // Also a SecurityException from the file, or a buffer freed under the write
+            if (BuildConfig.DEBUG) e.printStackTrace();
+            error = e;
+        } finally {
+            if (image != null) {
+                try {
+                    image.close();
+                } catch (Exception e) {
+                    if (BuildConfig.DEBUG) e.printStackTrace();
+                }
+            }
+        }
+        if (mListener == null) return;
+        if (error == null) {
+            mListener.onPictureSaved(rotationDegrees);
+        } else {
+            mListener.onPictureSaveFailed(error);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.annotation.TargetApi;
+import android.graphics.Rect;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A YUV 4:2:0 preview frame exposed plane by plane, without any conversion or copy.
+ *
+ * <p>On Camera2 the planes are the direct buffers of the camera's {@link Image}; on Camera1
+ * they are views into the NV21 callback buffer. Either way the frame holds a camera buffer, so
+ * {@link #close()} it as soon as possible. The camera cannot deliver more frames than it has
+ * buffers for.</p>
+ */
+public class PlanarFrame {
+
+    /**
+     * One plane of a {@link PlanarFrame}: Y, U or V, in that order.
+     */
+    public static class Plane {
+
+        private final ByteBuffer mBuffer;
+        private final int mRowStride;
+        private final int mPixelStride;
+
+        Plane(ByteBuffer buffer, int rowStride, int pixelStride) {
+            mBuffer = buffer;
+            mRowStride = rowStride;
+            mPixelStride = pixelStride;
+        }
+
+        /**
+         * @return The pixels of this plane. Direct on Camera2, and with direct frames. Read-only
+         * in spirit: writing to it changes what other consumers of the camera buffer see.
+         */
+        public ByteBuffer getBuffer() {
+            return mBuffer;
+        }
+
+        /**
+         * @return The distance in bytes between the starts of two consecutive rows.
+         */
+        public int getRowStride() {
+            return mRowStride;
+        }
+
+        /**
+         * @return The distance in bytes between two horizontally adjacent samples.
+         */
+        public int getPixelStride() {
+            return mPixelStride;
+        }
+
+    }
+
+    private final Plane[] mPlanes;
+    private final int mWidth;
+    private final int mHeight;
+    private final Rect mCropRect;
+    private final long mTimestamp;
+    private final int mRotationDegrees;
+    private final FrameMetadata mMetadata;
+
+    private final Image mImage;
+    private final Frame mFrame;
+
+    @TargetApi(19)
+    PlanarFrame(Image image, int rotationDegrees, FrameMetadata metadata) {
+        Image.Plane[] planes = image.getPlanes();
+        mPlanes = new Plane[planes.length];
+        for (int i = 0; i < planes.length; i++) {
+            mPlanes[i] = new Plane(planes[i].getBuffer(), planes[i].getRowStride(),
+                    planes[i].getPixelStride());
+        }
+        mWidth = image.getWidth();
+        mHeight = image.getHeight();
+        mCropRect = image.getCropRect();
+        mTimestamp = image.getTimestamp();
+        mRotationDegrees = rotationDegrees;
+        mMetadata = metadata;
+        mImage = image;
+        mFrame = null;
+    }
+
+    /**
+     * Exposes the NV21 data of {@code frame} as a Y plane followed by interleaved U and V
+     * planes.
+     */
+    PlanarFrame(Frame frame, long timestamp) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        ByteBuffer data = frame.getBuffer();
+        int lumaSize = width * height;
+        int chromaSize = lumaSize / 2;
+        mPlanes = new Plane[]{
+                new Plane(slice(data, 0, lumaSize), width, 1),
+                new Plane(slice(data, lumaSize + 1, chromaSize - 1), width, 2),
+                new Plane(slice(data, lumaSize, chromaSize), width, 2),
+        };
+        mWidth = width;
+        mHeight = height;
+        mCropRect = new Rect(0, 0, width, height);
+        mTimestamp = timestamp;
+        mRotationDegrees = frame.getRotationDegrees();
+        mMetadata = frame.getMetadata();
+        mImage = null;
+        mFrame = frame;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        buffer.clear();
+        buffer.position(offset);
+        buffer.limit(offset + length);
+        return buffer.slice();
+    }
+
+    /**
+     * @return The Y, U and V planes, in that order.
+     */
+    public Plane[] getPlanes() {
+        return mPlanes;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return The area of the planes that holds valid pixels.
+     */
+    public Rect getCropRect() {
+        return mCropRect;
+    }
+
+    /**
+     * @return The capture time in nanoseconds: the sensor timestamp on Camera2, the arrival
+     * time ({@link System#nanoTime()}) on Camera1.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public int getRotationDegrees() {
+        return mRotationDegrees;
+    }
+
+    public FrameMetadata getMetadata() {
+        return mMetadata;
+    }
+
+    /**
+     * Gives the underlying buffer back to the camera. The planes must not be used afterwards.
+     */
+    @TargetApi(19)
+    public void close() {
+        if (mImage != null) {
+            mImage.close();
+        } else {
+            mFrame.release();
+        }
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A camera that plays a {@link FrameRecording} back through the frame listeners and consumers,
+ * the same way Camera1 and Camera2 deliver preview frames: pooled, rate limited and queued by
+ * the {@link FrameDeliveryPolicy}.
+ *
+ * <p>It uses plain Java threads, so the frame pipeline can be run and benchmarked on a machine
+ * without a camera. Frames are converted to the frame format if they were recorded in another
+ * one, and turned upright if asked to. There is no preview, no orientation sensor and no still
+ * capture.</p>
+ */
+class ReplayCamera extends CameraViewImpl {
+
+    private final FrameRecording mRecording;
+
+    private volatile boolean mRealTime = true;
+
+    private volatile boolean mLooping;
+
+    private int mFacing = Constants.FACING_BACK;
+
+    private boolean mAutoFocus;
+
+    private int mFlash = Constants.FLASH_OFF;
+
+    private Thread mPlaybackThread;
+
+    private ExecutorService mFrameExecutor;
+
+    /**
+     * Holds frames to be turned upright. Only used by the playback thread.
+     */
+    private byte[] mUnrotated = new byte[0];
+
+    private final Runnable mPlayback = new Runnable() {
+        @Override
+        public void run() {
+            List<FrameFanOut.Consumer> consumers = new ArrayList<>();
+            int count = mRecording.getFrameCount();
+            long first = mRecording.getTimestamp(0);
+            long duration = mRecording.getTimestamp(count - 1) - first;
+            // Later passes of a loop carry on the timeline, one average frame interval apart
+            long passDuration = count > 1 ? duration + duration / (count - 1) : 0;
+            long passOffset = 0;
+            try {
+                do {
+                    long startNanos = System.nanoTime();
+                    for (int i = 0; i < count && !Thread.currentThread().isInterrupted(); i++) {
+                        long timestamp = mRecording.getTimestamp(i);
+                        if (mRealTime) {
+                            long delay = startNanos + timestamp - first - System.nanoTime();
+                            if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+                        }
+                        replayFrame(i, timestamp + passOffset, consumers);
+                    }
+                    passOffset += passDuration;
+                } while (mLooping && !Thread.currentThread().isInterrupted());
+            } catch (InterruptedException e) {
+                // Stopped
+            } catch (IOException e) {
+                if (BuildConfig.DEBUG) e.printStackTrace();
+                reportError(e);
+            }
+        }
+    };
+
+    ReplayCamera(PreviewImpl preview, FrameRecording recording) {
+        super(preview, null);
+        mRecording = recording;
+    }
+
+    /**
+     * Sets whether frames are played at the pace they were recorded, or as fast as the frame
+     * listeners and consumers take them. Recorded pace by default. Takes effect on
+     * {@link #start()}.
+     */
+    void setRealTime(boolean realTime) {
+        mRealTime = realTime;
+    }
+
+    boolean isRealTime() {
+        return mRealTime;
+    }
+
+    /**
+     * Sets whether playback starts over at the end of the recording. The timestamps of later
+     * passes carry on from the first one.
+     */
+    void setLooping(boolean looping) {
+        mLooping = looping;
+    }
+
+    boolean isLooping() {
+        return mLooping;
+    }
+
+    /**
+     * Waits until all the frames have been played and handed to the frame listener.
+     *
+     * @return {@code false} if playback is still going after {@code timeoutMillis}.
+     */
+    boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        Thread thread = mPlaybackThread;
+        ExecutorService executor = mFrameExecutor;
+        if (thread == null) return true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        thread.join(timeoutMillis);
+        if (thread.isAlive()) return false;
+        // Anything offered to the frame listener was queued ahead of this
+        final Object done = new Object();
+        final boolean[] drained = new boolean[1];
+        synchronized (done) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (done) {
+                        drained[0] = true;
+                        done.notifyAll();
+                    }
+                }
+            });
+            long remaining;
+            while (!drained[0]
+                    && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(done, remaining);
+            }
+        }
+        return drained[0];
+    }
+
+    private void replayFrame(int index, long timestamp, List<FrameFanOut.Consumer> consumers)
+            throws IOException {
+        long arrivalNanos = System.nanoTime();
+        long sequence = nextFrameSequence();
+        boolean primary = selectFrameReceivers(arrivalNanos, consumers);
+        if (!primary && consumers.isEmpty()) {
+            return;
+        }
+        int width = mRecording.getWidth(index);
+        int height = mRecording.getHeight(index);
+        int rotationDegrees = mRecording.getRotationDegrees(index);
+        Frame frame;
+        if (uprightFrames) {
+            int length = Frame.dataSize(width, height, frameFormat);
+            if (mUnrotated.length < length) {
+                mUnrotated = new byte[length];
+            }
+            readData(index, ByteBuffer.wrap(mUnrotated, 0, length));
+            frame = rotateUpright(mUnrotated, width, height, rotationDegrees, frameFormat);
+        } else {
+            framePool.configure(width, height, frameFormat, usesDirectFrames());
+            frame = framePool.acquire();
+            try {
+                readData(index, frame.getBuffer());
+            } catch (IOException e) {
+                frame.release();
+                throw e;
+            }
+            frame.setRotationDegrees(rotationDegrees);
+            frame.preparePyramidLazily(framePyramidLevels);
+            prepareFrameStatistics(frame, true);
+        }
+        stampFrame(frame.getMetadata(), sequence, timestamp, arrivalNanos,
+                System.nanoTime() - arrivalNanos);
+        // The playback thread may wait for slow listeners, as the Camera2 one does
+        if (handOutFrame(frame, primary, consumers, true)) {
+            mFrameExecutor.execute(frameDrainer);
+        }
+    }
+
+    /**
+     * Fills {@code out} up to its limit with a recorded frame. Chroma missing from a luma-only
+     * recording is filled in gray.
+     */
+    private void readData(int index, ByteBuffer out) throws IOException {
+        ByteBuffer data = mRecording.getData(index);
+        if (data.remaining() > out.remaining()) {
+            data.limit(data.position() + out.remaining());
+        }
+        out.put(data);
+        while (out.hasRemaining()) {
+            out.put((byte) 128);
+        }
+    }
+
+    private void reportError(final Exception e) {
+        if (cameraErrorCallback == null) return;
+        Runnable report = new Runnable() {
+            @Override
+            public void run() {
+                cameraErrorCallback.onCameraError(e);
+            }
+        };
+        View view = mPreview.getView();
+        if (view != null) {
+            view.post(report);
+        } else {
+            report.run();
+        }
+    }
+
+    @Override
+    boolean start() {
+        if (mPlaybackThread != null) return true;
+        if (mRecording.getFrameCount() == 0) return false;
+        mFrameSizeSelected = new Size(mRecording.getWidth(0), mRecording.getHeight(0));
+        mPreviewSizeSelected = mFrameSizeSelected;
+        mFrameExecutor = Executors.newSingleThreadExecutor();
+        mPlaybackThread = new Thread(mPlayback, "CameraReplay");
+        mPlaybackThread.start();
+        return true;
+    }
+
+    @Override
+    void stop() {
+        if (mPlaybackThread == null) return;
+        mPlaybackThread.interrupt();
+        try {
+            mPlaybackThread.join();
+            mFrameExecutor.shutdownNow();
+            mFrameExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        mPlaybackThread = null;
+        mFrameExecutor = null;
+        // Give frames that never reached the frame thread back to the pool
+        frameDispatcher.clear();
+        frameConsumers.clear();
+    }
+
+    @Override
+    boolean isCameraOpened() {
+        return mPlaybackThread != null;
+    }
+
+    @Override
+    void setFacing(int facing) {
+        mFacing = facing;
+    }
+
+    @Override
+    int getFacing() {
+        return mFacing;
+    }
+
+    @Override
+    Set<AspectRatio> getSupportedAspectRatios() {
+        AspectRatio ratio = getAspectRatio();
+        return ratio == null ? Collections.<AspectRatio>emptySet() : Collections.singleton(ratio);
+    }
+
+    @Override
+    boolean setAspectRatio(AspectRatio ratio, boolean isInitializing) {
+        return false;
+    }
+
+    @Override
+    AspectRatio getAspectRatio() {
+        if (mRecording.getFrameCount() == 0) return null;
+        return AspectRatio.of(mRecording.getWidth(0), mRecording.getHeight(0));
+    }
+
+    @Override
+    void setAutoFocus(boolean autoFocus) {
+        mAutoFocus = autoFocus;
+    }
+
+    @Override
+    boolean getAutoFocus() {
+        return mAutoFocus;
+    }
+
+    @Override
+    void setFlash(int flash) {
+        mFlash = flash;
+    }
+
+    @Override
+    int getFlash() {
+        return mFlash;
+    }
+
+    @Override
+    void takePicture(PictureWriter writer) {
+        refusePicture(writer, new UnsupportedOperationException("A frame recording has no pictures"));
+    }
+
+    @Override
+    void takeBurst(int count, long intervalMillis) {
+        takePicture((PictureWriter) null);
+    }
+
+    @Override
+    void setDisplayOrientation(int displayOrientation) {
+    }
+
+    @Override
+    int getCameraDefaultOrientation() {
+        return 0;
+    }
+
+    @Override
+    boolean zoom(MotionEvent event) {
+        return false;
+    }
+
+    @Override
+    void onPinchFingerUp() {
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.annotation.TargetApi;
+import android.graphics.Rect;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts YUV_420_888 planes into NV21 on several cores at once, each taking a horizontal
+ * stripe of rows. The calling thread converts the first stripe itself and waits for the rest.
+ *
+ * <p>One instance converts one frame at a time. The worker threads are shared by all
+ * instances and go away when idle.</p>
+ */
+class StripedYuvConverter {
+
+    /**
+     * Below this many pixels the hand-off to other threads costs more than it saves.
+     */
+    static final int MIN_PARALLEL_PIXELS = 1920 * 1080;
+
+    private static final int MAX_PLANES = 3;
+
+    private static ThreadPoolExecutor sWorkers;
+
+    /**
+     * @return The workers, one per core besides the converting thread.
+     */
+    private static synchronized ThreadPoolExecutor getWorkers() {
+        if (sWorkers == null) {
+            int count = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+            sWorkers = new ThreadPoolExecutor(count, count, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private int mCount;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CameraFrameConversion-" + mCount++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sWorkers.allowCoreThreadTimeOut(true);
+        }
+        return sWorkers;
+    }
+
+    private class Stripe implements Runnable {
+
+        int mFirstRow;
+
+        int mLastRow;
+
+        byte[] mRowData = new byte[0];
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < mPlaneCount; i++) {
+                    if (mRowData.length < mRowStrides[i]) {
+                        mRowData = new byte[mRowStrides[i]];
+                    }
+                    Utils.convertPlaneRows(mBuffers[i].duplicate(), mRowStrides[i],
+                            mPixelStrides[i], i, mLeft, mTop, mWidth, mHeight, mFirstRow,
+                            mLastRow, mOutput, mRowData, mPyramid, null);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            } finally {
+                finish();
+            }
+        }
+
+    }
+
+    private final Stripe[] mStripes;
+
+    private final ByteBuffer[] mBuffers = new ByteBuffer[MAX_PLANES];
+    private final int[] mRowStrides = new int[MAX_PLANES];
+    private final int[] mPixelStrides = new int[MAX_PLANES];
+    private int mPlaneCount;
+    private int mLeft;
+    private int mTop;
+    private int mWidth;
+    private int mHeight;
+    private byte[] mOutput;
+    private byte[][] mPyramid;
+
+    /**
+     * Guarded by this.
+     */
+    private int mPending;
+
+    /**
+     * Guarded by this.
+     */
+    private RuntimeException mFailure;
+
+    StripedYuvConverter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripeCount How many stripes each frame is split into.
+     */
+    StripedYuvConverter(int stripeCount) {
+        mStripes = new Stripe[Math.max(stripeCount, 1)];
+        for (int i = 0; i < mStripes.length; i++) {
+            mStripes[i] = new Stripe();
+        }
+    }
+
+    int getStripeCount() {
+        return mStripes.length;
+    }
+
+    /**
+     * Same as {@link Utils#YUV420toNV21(Image, byte[], byte[], byte[][], FrameStatistics)},
+     * or {@link Utils#YUV420toLuma(Image, byte[], byte[], byte[][], FrameStatistics)} if
+     * {@code planeCount} is 1, without statistics.
+     */
+    @TargetApi(19)
+    void convert(Image image, int planeCount, byte[] output, byte[][] pyramid) {
+        Rect crop = image.getCropRect();
+        Image.Plane[] planes = image.getPlanes();
+        for (int i = 0; i < planeCount; i++) {
+            mBuffers[i] = planes[i].getBuffer();
+            mRowStrides[i] = planes[i].getRowStride();
+            mPixelStrides[i] = planes[i].getPixelStride();
+        }
+        convert(planeCount, crop.left, crop.top, crop.width(), crop.height(), output, pyramid);
+    }
+
+    /**
+     * Converts planes described by {@code buffers}, {@code rowStrides} and
+     * {@code pixelStrides}, as found in an {@link Image}.
+     */
+    void convert(ByteBuffer[] buffers, int[] rowStrides, int[] pixelStrides, int planeCount,
+                 int left, int top, int width, int height, byte[] output, byte[][] pyramid) {
+        for (int i = 0; i < planeCount; i++) {
+            mBuffers[i] = buffers[i];
+            mRowStrides[i] = rowStrides[i];
+            mPixelStrides[i] = pixelStrides[i];
+        }
+        convert(planeCount, left, top, width, height, output, pyramid);
+    }
+
+    private void convert(int planeCount, int left, int top, int width, int height,
+                         byte[] output, byte[][] pyramid) {
+        mPlaneCount = planeCount;
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+        mOutput = output;
+        mPyramid = pyramid;
+
+        // Stripes start on rows that complete a row of every pyramid level, so that no two
+        // stripes write to the same row anywhere
+        int alignment = 2 << (pyramid != null ? pyramid.length : 0);
+        int stripeHeight = (height + mStripes.length - 1) / mStripes.length;
+        stripeHeight = (stripeHeight + alignment - 1) / alignment * alignment;
+        int count = 0;
+        for (int row = 0; row < height; row += stripeHeight) {
+            Stripe stripe = mStripes[count++];
+            stripe.mFirstRow = row;
+            stripe.mLastRow = Math.min(row + stripeHeight, height);
+        }
+
+        synchronized (this) {
+            mPending = count;
+            mFailure = null;
+        }
+        if (count > 1) {
+            ThreadPoolExecutor workers = getWorkers();
+            for (int i = 1; i < count; i++) {
+                workers.execute(mStripes[i]);
+            }
+        }
+        mStripes[0].run();
+        awaitStripes();
+        for (int i = 0; i < planeCount; i++) {
+            mBuffers[i] = null;
+        }
+        mOutput = null;
+        mPyramid = null;
+    }
+
+    private synchronized void awaitStripes() {
+        boolean interrupted = false;
+        while (mPending > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // The stripes still write into the output; it cannot be given up before they end
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (mFailure != null) {
+            throw mFailure;
+        }
+    }
+
+    private synchronized void fail(RuntimeException e) {
+        if (mFailure == null) {
+            mFailure = e;
+        }
+    }
+
+    private synchronized void finish() {
+        if (--mPending == 0) {
+            notifyAll();
+        }
+    }
+
+}
@@ -29,62 +29,316 @@ import java.nio.ByteBuffer;
 
 public class Utils {
 
+    /**
+     * Converts a YUV_420_888 {@link Image} into a newly allocated NV21 array.
+     *
+     * @see #YUV420toNV21(Image, byte[], byte[])
+     */
     @SuppressLint("NewApi")
     public static byte[] YUV420toNV21(Image image) {
         Rect crop = image.getCropRect();
-        int format = image.getFormat();
+        byte[] data = new byte[crop.width() * crop.height() * ImageFormat.getBitsPerPixel(image.getFormat()) / 8];
+        byte[] rowData = new byte[image.getPlanes()[0].getRowStride()];
+        YUV420toNV21(image, data, rowData);
+        return data;
+    }
+
+    /**
+     * Converts a YUV_420_888 {@link Image} into NV21 without allocating.
+     *
+     * @param output  Receives the NV21 data. Must hold at least {@code width * height * 3 / 2}
+     *                bytes of the crop rect of the image.
+     * @param rowData Scratch space for strided rows. Must hold at least the row stride of the
+     *                first plane.
+     */
+    @SuppressLint("NewApi")
+    public static void YUV420toNV21(Image image, byte[] output, byte[] rowData) {
+        YUV420toNV21(image, output, rowData, null, null);
+    }
+
+    /**
+     * Converts a YUV_420_888 {@link Image} into NV21 and fills a luma pyramid and statistics
+     * in the same pass, while each row is still in cache.
+     *
+     * @param pyramid    Buffers for the downscaled luma levels, each a quarter of the
+     *                   previous one. May be {@code null}.
+     * @param statistics Reset for the size of the crop rect. May be {@code null}.
+     * @see #buildPyramid(byte[], int, int, byte[][])
+     */
+    @SuppressLint("NewApi")
+    static void YUV420toNV21(Image image, byte[] output, byte[] rowData, byte[][] pyramid,
+                             FrameStatistics statistics) {
+        convertPlanes(image, image.getPlanes().length, output, rowData, pyramid, statistics);
+    }
+
+    /**
+     * Copies only the luma (Y) plane of a YUV_420_888 {@link Image}, which is all a grayscale
+     * consumer needs and avoids the strided chroma loop.
+     *
+     * @param output Receives the luma. Must hold at least {@code width * height} bytes of the
+     *               crop rect of the image.
+     * @see #YUV420toNV21(Image, byte[], byte[], byte[][], FrameStatistics)
+     */
+    @SuppressLint("NewApi")
+    static void YUV420toLuma(Image image, byte[] output, byte[] rowData, byte[][] pyramid,
+                             FrameStatistics statistics) {
+        convertPlanes(image, 1, output, rowData, pyramid, statistics);
+    }
+
+    @SuppressLint("NewApi")
+    private static void convertPlanes(Image image, int planeCount, byte[] output, byte[] rowData,
+                                      byte[][] pyramid, FrameStatistics statistics) {
+        Rect crop = image.getCropRect();
+        Image.Plane[] planes = image.getPlanes();
+        for (int i = 0; i < planeCount; i++) {
+            convertPlaneRows(planes[i].getBuffer(), planes[i].getRowStride(),
+                    planes[i].getPixelStride(), i, crop.left, crop.top, crop.width(),
+                    crop.height(), 0, crop.height(), output, rowData, pyramid, statistics);
+        }
+    }
+
+    /**
+     * Converts a YUV_420_888 {@link Image} into NV21 in {@code output}, typically a direct
+     * buffer. Luma rows go from buffer to buffer without passing through the Java heap.
+     *
+     * @param output  Receives the NV21 data from index 0. Its position is changed.
+     * @param rowData Scratch space for chroma rows. Must hold at least three times the width
+     *                of the crop rect of the image.
+     */
+    @SuppressLint("NewApi")
+    static void YUV420toNV21(Image image, ByteBuffer output, byte[] rowData) {
+        convertPlanes(image, true, output, rowData);
+    }
+
+    /**
+     * Like {@link #YUV420toNV21(Image, ByteBuffer, byte[])}, for the luma (Y) plane only.
+     */
+    @SuppressLint("NewApi")
+    static void YUV420toLuma(Image image, ByteBuffer output, byte[] rowData) {
+        convertPlanes(image, false, output, rowData);
+    }
+
+    @SuppressLint("NewApi")
+    private static void convertPlanes(Image image, boolean chroma, ByteBuffer output,
+                                      byte[] rowData) {
+        Rect crop = image.getCropRect();
+        Image.Plane[] planes = image.getPlanes();
         int width = crop.width();
         int height = crop.height();
-        Image.Plane[] planes = image.getPlanes();
-        byte[] data = new byte[width * height * ImageFormat.getBitsPerPixel(format) / 8];
-        byte[] rowData = new byte[planes[0].getRowStride()];
-
-        int channelOffset = 0;
-        int outputStride = 1;
-        for (int i = 0; i < planes.length; i++) {
-            switch (i) {
-                case 0:
-                    channelOffset = 0;
-                    outputStride = 1;
-                    break;
-                case 1:
-                    channelOffset = width * height + 1;
-                    outputStride = 2;
-                    break;
-                case 2:
-                    channelOffset = width * height;
-                    outputStride = 2;
-                    break;
-            }
+        copyPlane(planes[0].getBuffer(),
+                planes[0].getRowStride() * crop.top + planes[0].getPixelStride() * crop.left,
+                planes[0].getRowStride(), planes[0].getPixelStride(), width, height,
+                output, 0, rowData);
+        if (chroma) {
+            // U and V always share their row and pixel strides
+            int rowStride = planes[1].getRowStride();
+            int pixelStride = planes[1].getPixelStride();
+            int position = rowStride * (crop.top >> 1) + pixelStride * (crop.left >> 1);
+            interleaveChroma(planes[2].getBuffer(), planes[1].getBuffer(), position, rowStride,
+                    pixelStride, width >> 1, height >> 1, output, width * height, rowData);
+        }
+    }
 
-            ByteBuffer buffer = planes[i].getBuffer();
-            int rowStride = planes[i].getRowStride();
-            int pixelStride = planes[i].getPixelStride();
-
-            int shift = (i == 0) ? 0 : 1;
-            int w = width >> shift;
-            int h = height >> shift;
-            buffer.position(rowStride * (crop.top >> shift) + pixelStride * (crop.left >> shift));
-            for (int row = 0; row < h; row++) {
-                int length;
-                if (pixelStride == 1 && outputStride == 1) {
-                    length = w;
-                    buffer.get(data, channelOffset, length);
-                    channelOffset += length;
-                } else {
-                    length = (w - 1) * pixelStride + 1;
-                    buffer.get(rowData, 0, length);
-                    for (int col = 0; col < w; col++) {
-                        data[channelOffset] = rowData[col * pixelStride];
-                        channelOffset += outputStride;
-                    }
+    /**
+     * Copies one plane of a YUV_420_888 image into {@code output}, packed.
+     *
+     * @param position Position in {@code buffer} of the first pixel to copy.
+     * @param offset   Index in {@code output} of the first pixel.
+     * @param rowData  Scratch space for strided rows. Not used if {@code pixelStride} is 1.
+     */
+    static void copyPlane(ByteBuffer buffer, int position, int rowStride, int pixelStride,
+                          int w, int h, ByteBuffer output, int offset, byte[] rowData) {
+        ByteBuffer source = buffer.duplicate();
+        output.position(offset);
+        for (int row = 0; row < h; row++) {
+            int start = position + row * rowStride;
+            if (pixelStride == 1) {
+                source.limit(start + w).position(start);
+                output.put(source);
+            } else {
+                int length = (w - 1) * pixelStride + 1;
+                source.limit(start + length).position(start);
+                source.get(rowData, 0, length);
+                for (int col = 1; col < w; col++) {
+                    rowData[col] = rowData[col * pixelStride];
                 }
-                if (row < h - 1) {
-                    buffer.position(buffer.position() + rowStride - length);
+                output.put(rowData, 0, w);
+            }
+        }
+    }
+
+    /**
+     * Writes the V and U planes of a YUV_420_888 image into {@code output} as the interleaved
+     * chroma of NV21, a whole row at a time.
+     *
+     * @param w       Chroma samples per row.
+     * @param rowData Scratch space of at least {@code 2 * ((w - 1) * pixelStride + 1) + 2 * w}
+     *                bytes.
+     */
+    static void interleaveChroma(ByteBuffer v, ByteBuffer u, int position, int rowStride,
+                                 int pixelStride, int w, int h, ByteBuffer output, int offset,
+                                 byte[] rowData) {
+        ByteBuffer vSource = v.duplicate();
+        ByteBuffer uSource = u.duplicate();
+        int length = (w - 1) * pixelStride + 1;
+        int interleaved = 2 * length;
+        output.position(offset);
+        for (int row = 0; row < h; row++) {
+            int start = position + row * rowStride;
+            vSource.limit(start + length).position(start);
+            vSource.get(rowData, 0, length);
+            uSource.limit(start + length).position(start);
+            uSource.get(rowData, length, length);
+            for (int col = 0, in = 0, out = interleaved; col < w; col++, in += pixelStride) {
+                rowData[out++] = rowData[in];
+                rowData[out++] = rowData[length + in];
+            }
+            output.put(rowData, interleaved, 2 * w);
+        }
+    }
+
+    /**
+     * Converts the part of one plane of a YUV_420_888 image that covers luma rows
+     * {@code firstRow} (inclusive) to {@code lastRow} (exclusive) of the crop rect into NV21.
+     * Disjoint row ranges write disjoint parts of {@code output} and of {@code pyramid}, so
+     * they can be converted in parallel, each with its own duplicate of {@code buffer}.
+     *
+     * @param plane      0 for Y, 1 for U, 2 for V.
+     * @param firstRow   Must be even unless it is the first row; a multiple of
+     *                   {@code 2 << pyramid.length} if there is a pyramid.
+     * @param statistics Gathers the luma rows. Not thread safe, so {@code null} when row
+     *                   ranges are converted in parallel.
+     */
+    static void convertPlaneRows(ByteBuffer buffer, int rowStride, int pixelStride, int plane,
+                                 int left, int top, int width, int height,
+                                 int firstRow, int lastRow, byte[] output, byte[] rowData,
+                                 byte[][] pyramid, FrameStatistics statistics) {
+        int channelOffset;
+        int outputStride;
+        switch (plane) {
+            case 0:
+                channelOffset = 0;
+                outputStride = 1;
+                break;
+            case 1:
+                channelOffset = width * height + 1;
+                outputStride = 2;
+                break;
+            default:
+                channelOffset = width * height;
+                outputStride = 2;
+                break;
+        }
+        int shift = (plane == 0) ? 0 : 1;
+        int planeWidth = width >> shift;
+        int first = firstRow >> shift;
+        int rows = (lastRow >> shift) - first;
+        if (rows <= 0) {
+            return;
+        }
+        copyPlane(buffer,
+                rowStride * ((top >> shift) + first) + pixelStride * (left >> shift),
+                rowStride, pixelStride, planeWidth, rows,
+                output, channelOffset + first * planeWidth * outputStride, outputStride,
+                rowData, plane == 0 ? pyramid : null, plane == 0 ? statistics : null);
+    }
+
+    /**
+     * Copies one plane of a YUV_420_888 image into {@code output}.
+     *
+     * @param position     Position in {@code buffer} of the first pixel to copy.
+     * @param offset       Index in {@code output} of the first pixel.
+     * @param outputStride Distance in {@code output} between two horizontally adjacent pixels.
+     */
+    static void copyPlane(ByteBuffer buffer, int position, int rowStride, int pixelStride,
+                          int w, int h, byte[] output, int offset, int outputStride,
+                          byte[] rowData) {
+        copyPlane(buffer, position, rowStride, pixelStride, w, h, output, offset, outputStride,
+                rowData, null);
+    }
+
+    /**
+     * Copies one plane and, if {@code pyramid} is not {@code null}, downscales it row by row
+     * as it goes. The plane must then be packed at the start of {@code output}, and
+     * {@code offset} is the start of a row of it.
+     */
+    static void copyPlane(ByteBuffer buffer, int position, int rowStride, int pixelStride,
+                          int w, int h, byte[] output, int offset, int outputStride,
+                          byte[] rowData, byte[][] pyramid) {
+        copyPlane(buffer, position, rowStride, pixelStride, w, h, output, offset, outputStride,
+                rowData, pyramid, null);
+    }
+
+    /**
+     * Like {@link #copyPlane(ByteBuffer, int, int, int, int, int, byte[], int, int, byte[],
+     * byte[][])}, also adding each row to {@code statistics} if it is not {@code null}.
+     */
+    static void copyPlane(ByteBuffer buffer, int position, int rowStride, int pixelStride,
+                          int w, int h, byte[] output, int offset, int outputStride,
+                          byte[] rowData, byte[][] pyramid, FrameStatistics statistics) {
+        int firstRow = pyramid != null || statistics != null ? offset / w : 0;
+        buffer.position(position);
+        for (int row = 0; row < h; row++) {
+            int length;
+            int rowOffset = offset;
+            if (pixelStride == 1 && outputStride == 1) {
+                length = w;
+                buffer.get(output, offset, length);
+                offset += length;
+            } else {
+                length = (w - 1) * pixelStride + 1;
+                buffer.get(rowData, 0, length);
+                for (int col = 0; col < w; col++) {
+                    output[offset] = rowData[col * pixelStride];
+                    offset += outputStride;
                 }
             }
+            if (pyramid != null) {
+                reduceRow(output, w, firstRow + row, pyramid);
+            }
+            if (statistics != null) {
+                statistics.addRow(output, rowOffset, firstRow + row);
+            }
+            if (row < h - 1) {
+                buffer.position(buffer.position() + rowStride - length);
+            }
+        }
+    }
+
+    /**
+     * Fills {@code pyramid} from the luma plane at the start of {@code luma}, for example
+     * NV21 data.
+     */
+    static void buildPyramid(byte[] luma, int w, int h, byte[][] pyramid) {
+        for (int row = 0; row < h; row++) {
+            reduceRow(luma, w, row, pyramid);
+        }
+    }
+
+    /**
+     * Called once row {@code row} of a {@code w} pixels wide plane is complete. Every second
+     * row completes a row of the next level, which in turn may complete one further down.
+     */
+    private static void reduceRow(byte[] plane, int w, int row, byte[][] pyramid) {
+        byte[] src = plane;
+        int srcWidth = w;
+        for (int level = 0; level < pyramid.length && (row & 1) == 1; level++) {
+            byte[] dst = pyramid[level];
+            int dstWidth = srcWidth >> 1;
+            int top = (row - 1) * srcWidth;
+            int bottom = row * srcWidth;
+            int out = (row >> 1) * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                int sum = (src[top] & 0xff) + (src[top + 1] & 0xff)
+                        + (src[bottom] & 0xff) + (src[bottom + 1] & 0xff);
+                dst[out + x] = (byte) ((sum + 2) >> 2);
+                top += 2;
+                bottom += 2;
+            }
+            src = dst;
+            srcWidth = dstWidth;
+            row >>= 1;
         }
-        return data;
     }
 
 }
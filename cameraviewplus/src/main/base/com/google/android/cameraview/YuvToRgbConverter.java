@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Converts preview frames into packed ARGB pixels, as used by
+ * {@link android.graphics.Bitmap#setPixels(int[], int, int, int, int, int, int)}, in a single
+ * pass that also rotates, mirrors and downscales. No pixel buffer is allocated.
+ *
+ * <p>Colors are converted with the full range BT.601 (JFIF) matrix the camera uses. Mirroring
+ * flips the frame horizontally before it is rotated, as {@link CameraViewImpl} does for front
+ * camera pictures. Downscaling keeps the top left pixel of every {@code scale * scale}
+ * block.</p>
+ *
+ * <p>Preview frame listeners pass a {@code rotationDegrees} that is rotated counterclockwise;
+ * use {@code -rotationDegrees} as {@code clockwiseDegrees} to get an upright image.</p>
+ */
+public final class YuvToRgbConverter {
+
+    private YuvToRgbConverter() {
+    }
+
+    /**
+     * @return The width of the image produced from a {@code width} by {@code height} frame.
+     */
+    public static int getOutputWidth(int width, int height, int clockwiseDegrees, int scale) {
+        return isSideways(clockwiseDegrees) ? height / scale : width / scale;
+    }
+
+    /**
+     * @return The height of the image produced from a {@code width} by {@code height} frame.
+     */
+    public static int getOutputHeight(int width, int height, int clockwiseDegrees, int scale) {
+        return isSideways(clockwiseDegrees) ? width / scale : height / scale;
+    }
+
+    /**
+     * Converts an NV21 frame.
+     *
+     * @param clockwiseDegrees A multiple of 90, negative values included.
+     * @param scale            1 for full size, 2 for half the width and height, and so on.
+     * @param output           Receives {@link #getOutputWidth} by {@link #getOutputHeight}
+     *                         pixels, row by row.
+     */
+    public static void nv21ToArgb(byte[] nv21, int width, int height, int clockwiseDegrees,
+                                  boolean mirror, int scale, int[] output) {
+        nv21ToArgb(nv21, width, height, clockwiseDegrees, mirror, scale, output, null, 0);
+    }
+
+    /**
+     * Same as {@link #nv21ToArgb(byte[], int, int, int, boolean, int, int[])}, writing from
+     * the position of {@code output} on. The position does not change.
+     */
+    public static void nv21ToArgb(byte[] nv21, int width, int height, int clockwiseDegrees,
+                                  boolean mirror, int scale, IntBuffer output) {
+        if (output.hasArray()) {
+            nv21ToArgb(nv21, width, height, clockwiseDegrees, mirror, scale, output.array(),
+                    null, output.arrayOffset() + output.position());
+        } else {
+            nv21ToArgb(nv21, width, height, clockwiseDegrees, mirror, scale, null, output,
+                    output.position());
+        }
+    }
+
+    /**
+     * Converts a {@link PlanarFrame}, reading its planes in place.
+     *
+     * @see #nv21ToArgb(byte[], int, int, int, boolean, int, int[])
+     */
+    public static void planarToArgb(PlanarFrame frame, int clockwiseDegrees, boolean mirror,
+                                    int scale, int[] output) {
+        planarToArgb(frame, clockwiseDegrees, mirror, scale, output, null, 0);
+    }
+
+    /**
+     * @see #nv21ToArgb(byte[], int, int, int, boolean, int, IntBuffer)
+     */
+    public static void planarToArgb(PlanarFrame frame, int clockwiseDegrees, boolean mirror,
+                                    int scale, IntBuffer output) {
+        if (output.hasArray()) {
+            planarToArgb(frame, clockwiseDegrees, mirror, scale, output.array(), null,
+                    output.arrayOffset() + output.position());
+        } else {
+            planarToArgb(frame, clockwiseDegrees, mirror, scale, null, output,
+                    output.position());
+        }
+    }
+
+    /**
+     * Walks the output row by row. Output pixel (col, row) comes from source pixel
+     * (x0 + col * dxCol + row * dxRow, y0 + col * dyCol + row * dyRow).
+     */
+    private static final class Walk {
+
+        final int mOutWidth;
+        final int mOutHeight;
+        final int mX0;
+        final int mY0;
+        final int mDxCol;
+        final int mDyCol;
+        final int mDxRow;
+        final int mDyRow;
+
+        Walk(int width, int height, int clockwiseDegrees, boolean mirror, int scale) {
+            if (scale < 1) {
+                throw new IllegalArgumentException("Scale must be positive: " + scale);
+            }
+            if (clockwiseDegrees % 90 != 0) {
+                throw new IllegalArgumentException("Not a multiple of 90: " + clockwiseDegrees);
+            }
+            int w = width / scale;
+            int h = height / scale;
+            int x0, y0, dxCol, dyCol, dxRow, dyRow;
+            switch (normalize(clockwiseDegrees)) {
+                case 0:
+                    x0 = 0; y0 = 0;
+                    dxCol = 1; dyCol = 0; dxRow = 0; dyRow = 1;
+                    break;
+                case 90:
+                    x0 = 0; y0 = h - 1;
+                    dxCol = 0; dyCol = -1; dxRow = 1; dyRow = 0;
+                    break;
+                case 180:
+                    x0 = w - 1; y0 = h - 1;
+                    dxCol = -1; dyCol = 0; dxRow = 0; dyRow = -1;
+                    break;
+                default:
+                    x0 = w - 1; y0 = 0;
+                    dxCol = 0; dyCol = 1; dxRow = -1; dyRow = 0;
+                    break;
+            }
+            if (mirror) {
+                x0 = w - 1 - x0;
+                dxCol = -dxCol;
+                dxRow = -dxRow;
+            }
+            mOutWidth = isSideways(clockwiseDegrees) ? h : w;
+            mOutHeight = isSideways(clockwiseDegrees) ? w : h;
+            mX0 = x0 * scale;
+            mY0 = y0 * scale;
+            mDxCol = dxCol * scale;
+            mDyCol = dyCol * scale;
+            mDxRow = dxRow * scale;
+            mDyRow = dyRow * scale;
+        }
+
+    }
+
+    private static void nv21ToArgb(byte[] nv21, int width, int height, int clockwiseDegrees,
+                                   boolean mirror, int scale, int[] array, IntBuffer buffer,
+                                   int offset) {
+        Walk walk = new Walk(width, height, clockwiseDegrees, mirror, scale);
+        int frameSize = width * height;
+        int out = offset;
+        for (int row = 0; row < walk.mOutHeight; row++) {
+            int x = walk.mX0 + row * walk.mDxRow;
+            int y = walk.mY0 + row * walk.mDyRow;
+            for (int col = 0; col < walk.mOutWidth; col++) {
+                int luma = nv21[y * width + x] & 0xff;
+                int chroma = frameSize + (y >> 1) * width + (x & ~1);
+                int argb = toArgb(luma, (nv21[chroma + 1] & 0xff) - 128,
+                        (nv21[chroma] & 0xff) - 128);
+                if (array != null) {
+                    array[out++] = argb;
+                } else {
+                    buffer.put(out++, argb);
+                }
+                x += walk.mDxCol;
+                y += walk.mDyCol;
+            }
+        }
+    }
+
+    private static void planarToArgb(PlanarFrame frame, int clockwiseDegrees, boolean mirror,
+                                     int scale, int[] array, IntBuffer buffer, int offset) {
+        Rect crop = frame.getCropRect();
+        Walk walk = new Walk(crop.width(), crop.height(), clockwiseDegrees, mirror, scale);
+        PlanarFrame.Plane[] planes = frame.getPlanes();
+        ByteBuffer yBuffer = planes[0].getBuffer();
+        ByteBuffer uBuffer = planes[1].getBuffer();
+        ByteBuffer vBuffer = planes[2].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int uRowStride = planes[1].getRowStride();
+        int uPixelStride = planes[1].getPixelStride();
+        int vRowStride = planes[2].getRowStride();
+        int vPixelStride = planes[2].getPixelStride();
+        int left = crop.left;
+        int top = crop.top;
+        int out = offset;
+        for (int row = 0; row < walk.mOutHeight; row++) {
+            int x = left + walk.mX0 + row * walk.mDxRow;
+            int y = top + walk.mY0 + row * walk.mDyRow;
+            for (int col = 0; col < walk.mOutWidth; col++) {
+                int luma = yBuffer.get(y * yRowStride + x * yPixelStride) & 0xff;
+                int cy = y >> 1;
+                int cx = x >> 1;
+                int u = (uBuffer.get(cy * uRowStride + cx * uPixelStride) & 0xff) - 128;
+                int v = (vBuffer.get(cy * vRowStride + cx * vPixelStride) & 0xff) - 128;
+                int argb = toArgb(luma, u, v);
+                if (array != null) {
+                    array[out++] = argb;
+                } else {
+                    buffer.put(out++, argb);
+                }
+                x += walk.mDxCol;
+                y += walk.mDyCol;
+            }
+        }
+    }
+
+    /**
+     * Full range BT.601 in 10 bit fixed point.
+     */
+    static int toArgb(int y, int u, int v) {
+        int r = y + ((1436 * v) >> 10);
+        int g = y - ((352 * u + 731 * v) >> 10);
+        int b = y + ((1815 * u) >> 10);
+        r = r < 0 ? 0 : (r > 255 ? 255 : r);
+        g = g < 0 ? 0 : (g > 255 ? 255 : g);
+        b = b < 0 ? 0 : (b > 255 ? 255 : b);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int normalize(int degrees) {
+        return ((degrees % 360) + 360) % 360;
+    }
+
+    private static boolean isSideways(int degrees) {
+        return normalize(degrees) % 180 != 0;
+    }
+
+}
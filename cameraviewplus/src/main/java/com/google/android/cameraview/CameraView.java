@@ -19,6 +19,7 @@ package com.google.android.cameraview;
 import android.app.Activity;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -32,9 +33,12 @@ import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.widget.FrameLayout;
 
+import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.channels.FileChannel;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 public class CameraView extends FrameLayout {
 
@@ -70,12 +74,38 @@ public class CameraView extends FrameLayout {
     public @interface Flash {
     }
 
+    /** Frames hold the full NV21 image. */
+    public static final int FRAME_FORMAT_NV21 = Constants.FRAME_FORMAT_NV21;
+
+    /** Frames hold only the luma (Y) plane, a grayscale image of width * height bytes. */
+    public static final int FRAME_FORMAT_LUMA = Constants.FRAME_FORMAT_LUMA;
+
+    /** The content of preview frames passed to the frame listeners */
+    @IntDef({FRAME_FORMAT_NV21, FRAME_FORMAT_LUMA})
+    public @interface FrameFormat {
+    }
+
     CameraViewImpl mImpl;
 
     private boolean mAdjustViewBounds;
     private boolean mZoomEnabled = true;
     private int maximumWidth = 0;
     private int maximumPreviewWidth = 0;
+    private int frameBufferCount = 0;
+    private FrameDeliveryPolicy frameDeliveryPolicy;
+    private FrameSizePolicy frameSizePolicy;
+    private PictureDecodePolicy pictureDecodePolicy;
+    private int framePyramidLevels = 0;
+    private boolean frameStatistics = false;
+    private int frameStatisticsColumns = 4;
+    private int frameStatisticsRows = 4;
+    private int frameFormat = FRAME_FORMAT_NV21;
+    private float analysisFrameRate = 0f;
+    private boolean adaptiveAnalysisFrameRate = false;
+    private boolean parallelFrameConversion = false;
+    private boolean uprightFrames = false;
+    private boolean directFrames = false;
+    private boolean fastCapture = false;
 
     private final DisplayOrientationDetector mDisplayOrientationDetector;
 
@@ -285,6 +315,20 @@ public class CameraView extends FrameLayout {
             mImpl = new Camera1(createPreviewImpl(getContext(), true), getContext());
             mImpl.setMaximumWidth(maximumWidth);
             mImpl.setMaximumPreviewWidth(maximumPreviewWidth);
+            mImpl.setFrameBufferCount(frameBufferCount);
+            mImpl.setFrameDeliveryPolicy(frameDeliveryPolicy);
+            mImpl.setFrameSizePolicy(frameSizePolicy);
+            mImpl.setFramePyramidLevels(framePyramidLevels);
+            mImpl.setFrameStatisticsEnabled(frameStatistics);
+            mImpl.setFrameStatisticsGrid(frameStatisticsColumns, frameStatisticsRows);
+            mImpl.setFrameFormat(frameFormat);
+            mImpl.setAnalysisFrameRate(analysisFrameRate);
+            mImpl.setAdaptiveAnalysisFrameRate(adaptiveAnalysisFrameRate);
+            mImpl.setParallelFrameConversion(parallelFrameConversion);
+            mImpl.setUprightFrames(uprightFrames);
+            mImpl.setDirectFrames(directFrames);
+            mImpl.setPictureDecodePolicy(pictureDecodePolicy);
+            mImpl.setFastCapture(fastCapture);
             onRestoreInstanceState(state);
             mImpl.start();
         }
@@ -447,6 +491,15 @@ public class CameraView extends FrameLayout {
         return mImpl.getPictureSize();
     }
 
+    /**
+     * Returns the dimensions of preview frames, before any rotation.
+     *
+     * @return a Size object with the width and height of frames
+     */
+    public Size getFrameSize() {
+        return mImpl.getFrameSize();
+    }
+
     public void setOnPictureTakenListener (CameraViewImpl.OnPictureTakenListener pictureTakenListener) {
         if (mImpl != null) {
             mImpl.setOnPictureTakenListener(pictureTakenListener);
@@ -459,6 +512,17 @@ public class CameraView extends FrameLayout {
         }
     }
 
+    /**
+     * Sets a listener for the JPEG of each picture as a read-only buffer, without the copy
+     * made for {@link #setOnPictureBytesAvailableListener} or the decode made for
+     * {@link #setOnPictureTakenListener}. Release each {@link PictureBuffer} when done.
+     */
+    public void setOnPictureBufferAvailableListener (CameraViewImpl.OnPictureBufferAvailableListener pictureBufferAvailableListener) {
+        if (mImpl != null) {
+            mImpl.setOnPictureBufferAvailableListener(pictureBufferAvailableListener);
+        }
+    }
+
     public void setOnFocusLockedListener (CameraViewImpl.OnFocusLockedListener focusLockedListener) {
         if (mImpl != null) {
             mImpl.setOnFocusLockedListener(focusLockedListener);
@@ -483,10 +547,403 @@ public class CameraView extends FrameLayout {
         }
     }
 
+    public void setOnFrameAvailableListener (CameraViewImpl.OnFrameAvailableListener frameAvailableListener) {
+        if (mImpl != null) {
+            mImpl.setOnFrameAvailableListener(frameAvailableListener);
+        }
+    }
+
+    /**
+     * Adds a frame consumer that gets frames on {@code executor}, independently of the frame
+     * listener and of other consumers. The consumers share one converted frame, so each must
+     * {@link Frame#release() release} it once when done.
+     *
+     * @param policy What happens to new frames while this consumer is busy.
+     * @param maxFps The highest rate at which this consumer gets frames, or 0 for no limit.
+     */
+    public void addOnFrameAvailableListener (CameraViewImpl.OnFrameAvailableListener listener,
+                                             Executor executor, FrameDeliveryPolicy policy,
+                                             float maxFps) {
+        if (mImpl != null) {
+            mImpl.addOnFrameAvailableListener(listener, executor, policy, maxFps);
+        }
+    }
+
+    public void removeOnFrameAvailableListener (CameraViewImpl.OnFrameAvailableListener listener) {
+        if (mImpl != null) {
+            mImpl.removeOnFrameAvailableListener(listener);
+        }
+    }
+
+    public void setOnPlanarFrameListener (CameraViewImpl.OnPlanarFrameListener planarFrameListener) {
+        if (mImpl != null) {
+            mImpl.setOnPlanarFrameListener(planarFrameListener);
+        }
+    }
+
+    /**
+     * Sets how many preview frame buffers are cycled between the camera and the frame
+     * listeners. More buffers let a listener hold on to frames longer before the camera runs
+     * out of buffers to fill. On a running camera, extra buffers are added at once; fewer
+     * take effect as frames are released.
+     *
+     * @param count The number of buffers, at least 1.
+     */
+    public void setFrameBufferCount(int count) {
+        if (count <= 0) return;
+        frameBufferCount = count;
+        if (mImpl != null) {
+            mImpl.setFrameBufferCount(count);
+        }
+    }
+
+    public int getFrameBufferCount() {
+        return mImpl.getFrameBufferCount();
+    }
+
+    /**
+     * Sets how many preview frames the Camera2 camera can write while the previous one is
+     * still being converted, so that it never waits for the app. Only the latest of the
+     * waiting frames is converted, unless the frame delivery policy blocks the producer.
+     *
+     * @param count The number of images, at least 1. Default is 3.
+     */
+    public void setFrameImageCount(int count) {
+        if (mImpl != null) {
+            mImpl.setFrameImageCount(count);
+        }
+    }
+
+    public int getFrameImageCount() {
+        return mImpl.getFrameImageCount();
+    }
+
+    /**
+     * Sets how many still pictures the Camera2 camera can write before the app reads them.
+     *
+     * @param count The number of images, at least 1. Default is 1.
+     */
+    public void setPictureImageCount(int count) {
+        if (mImpl != null) {
+            mImpl.setPictureImageCount(count);
+        }
+    }
+
+    public int getPictureImageCount() {
+        return mImpl.getPictureImageCount();
+    }
+
+    /**
+     * Caps how many preview frames per second reach the frame listeners. Frames over the cap
+     * are skipped before they are converted, so they cost almost nothing.
+     *
+     * @param fps The cap, or 0 (the default) to analyze every frame.
+     */
+    public void setAnalysisFrameRate(float fps) {
+        analysisFrameRate = fps;
+        if (mImpl != null) {
+            mImpl.setAnalysisFrameRate(fps);
+        }
+    }
+
+    public float getAnalysisFrameRate() {
+        return mImpl.getAnalysisFrameRate();
+    }
+
+    /**
+     * Lets the frame rate adapt to the frame listener: a new frame is only let through once
+     * the listener's recent processing time has passed since the previous one. Do the work
+     * inside the listener, which runs on a background thread, for its time to count.
+     */
+    public void setAdaptiveAnalysisFrameRate(boolean adaptive) {
+        adaptiveAnalysisFrameRate = adaptive;
+        if (mImpl != null) {
+            mImpl.setAdaptiveAnalysisFrameRate(adaptive);
+        }
+    }
+
+    public boolean isAdaptiveAnalysisFrameRate() {
+        return mImpl.isAdaptiveAnalysisFrameRate();
+    }
+
+    /**
+     * @return The number of preview frames skipped to keep to the analysis frame rate.
+     */
+    public long getSkippedFrameCount() {
+        return mImpl.getSkippedFrameCount();
+    }
+
+    /**
+     * @return The number of preview frames skipped because a newer one was already waiting.
+     */
+    public long getStaleFrameCount() {
+        return mImpl.getStaleFrameCount();
+    }
+
+    /**
+     * Converts large preview frames (1080p and up) on all cores at once, each taking a stripe
+     * of rows. Worth it when a high {@code maximumPreviewWidth} makes the conversion the
+     * bottleneck. Only Camera2 converts frames; Camera1 ignores this.
+     */
+    public void setParallelFrameConversion(boolean parallel) {
+        parallelFrameConversion = parallel;
+        if (mImpl != null) {
+            mImpl.setParallelFrameConversion(parallel);
+        }
+    }
+
+    public boolean isParallelFrameConversion() {
+        return mImpl.isParallelFrameConversion();
+    }
+
+    /**
+     * Delivers preview frames upright, and mirrored for the front camera as pictures are, so
+     * that frame listeners never get sideways frames. Their {@code rotationDegrees} is then 0.
+     * Costs a rotation per frame, a few milliseconds at 1080p.
+     */
+    public void setUprightFrames(boolean upright) {
+        uprightFrames = upright;
+        if (mImpl != null) {
+            mImpl.setUprightFrames(upright);
+        }
+    }
+
+    public boolean isUprightFrames() {
+        return mImpl.isUprightFrames();
+    }
+
+    /**
+     * Converts frames straight into pooled direct buffers, so that native code can read them
+     * with {@code GetDirectBufferAddress} instead of copying an array. Read them with
+     * {@link Frame#getBuffer()}; {@link Frame#getData()} throws for a direct frame. Applies to
+     * {@link CameraViewImpl.OnFrameAvailableListener}s only, and their frames come without a
+     * pyramid or statistics. On Camera1 the camera's array is copied once.
+     */
+    public void setDirectFrames(boolean direct) {
+        directFrames = direct;
+        if (mImpl != null) {
+            mImpl.setDirectFrames(direct);
+        }
+    }
+
+    public boolean isDirectFrames() {
+        return mImpl.isDirectFrames();
+    }
+
+    /**
+     * Sets the content of the frames passed to the frame listeners. With
+     * {@link #FRAME_FORMAT_LUMA} only the Y plane is converted; on Camera1 the luma is simply the
+     * start of the camera's NV21 buffer, so a {@link Frame} is handed out without any copy.
+     *
+     * @param format {@link #FRAME_FORMAT_NV21} (the default) or {@link #FRAME_FORMAT_LUMA}.
+     */
+    public void setFrameFormat(@FrameFormat int format) {
+        frameFormat = format;
+        if (mImpl != null) {
+            mImpl.setFrameFormat(format);
+        }
+    }
+
+    @FrameFormat
+    public int getFrameFormat() {
+        return mImpl.getFrameFormat();
+    }
+
+    /**
+     * Makes every {@link Frame} passed to the {@link CameraViewImpl.OnFrameAvailableListener}
+     * carry {@code levels} downscaled copies of its luma, each half the width and height of the
+     * previous one. See {@link Frame#getPyramidLevel(int)}.
+     *
+     * @param levels The number of levels, 0 (the default) to disable.
+     */
+    public void setFramePyramidLevels(int levels) {
+        if (levels < 0) return;
+        framePyramidLevels = levels;
+        if (mImpl != null) {
+            mImpl.setFramePyramidLevels(levels);
+        }
+    }
+
+    public int getFramePyramidLevels() {
+        return mImpl.getFramePyramidLevels();
+    }
+
+    /**
+     * Makes every {@link Frame} carry the mean, histogram and tile grid of its luma, in
+     * {@link FrameMetadata#getStatistics()}. On Camera2 they are gathered while the frame is
+     * converted; otherwise by the first consumer that asks.
+     *
+     * @param enabled Default is {@code false}.
+     */
+    public void setFrameStatisticsEnabled(boolean enabled) {
+        frameStatistics = enabled;
+        if (mImpl != null) {
+            mImpl.setFrameStatisticsEnabled(enabled);
+        }
+    }
+
+    public boolean isFrameStatisticsEnabled() {
+        return mImpl.isFrameStatisticsEnabled();
+    }
+
+    /**
+     * Sets the grid of tiles over which frame statistics average the luma.
+     *
+     * @param columns Tiles across. Default is 4.
+     * @param rows    Tiles down. Default is 4.
+     */
+    public void setFrameStatisticsGrid(int columns, int rows) {
+        if (columns <= 0 || rows <= 0) return;
+        frameStatisticsColumns = columns;
+        frameStatisticsRows = rows;
+        if (mImpl != null) {
+            mImpl.setFrameStatisticsGrid(columns, rows);
+        }
+    }
+
+    public int getFrameStatisticsColumns() {
+        return mImpl.getFrameStatisticsColumns();
+    }
+
+    public int getFrameStatisticsRows() {
+        return mImpl.getFrameStatisticsRows();
+    }
+
+    /**
+     * Decides what happens to new preview frames while the frame listener is still busy.
+     *
+     * @param policy The policy. Default is {@link FrameDeliveryPolicy#keepLatest()}.
+     */
+    public void setFrameDeliveryPolicy(@NonNull FrameDeliveryPolicy policy) {
+        frameDeliveryPolicy = policy;
+        if (mImpl != null) {
+            mImpl.setFrameDeliveryPolicy(policy);
+        }
+    }
+
+    public FrameDeliveryPolicy getFrameDeliveryPolicy() {
+        return mImpl.getFrameDeliveryPolicy();
+    }
+
+    /**
+     * Picks the size of preview frames apart from the on-screen preview, so that frame
+     * listeners get frames no larger than they need. Has no effect on Camera1, whose frames
+     * are the preview itself.
+     *
+     * @param policy The policy. Default is {@link FrameSizePolicy#largest()}.
+     */
+    public void setFrameSizePolicy(@NonNull FrameSizePolicy policy) {
+        frameSizePolicy = policy;
+        if (mImpl != null) {
+            mImpl.setFrameSizePolicy(policy);
+        }
+    }
+
+    public FrameSizePolicy getFrameSizePolicy() {
+        return mImpl.getFrameSizePolicy();
+    }
+
+    /**
+     * Sets the size and orientation of the bitmaps passed to the
+     * {@link CameraViewImpl.OnPictureTakenListener}. A smaller size is decoded straight from
+     * the JPEG at a reduced sample size, so the full-resolution bitmap is never allocated.
+     *
+     * @param policy The policy. Default is {@link PictureDecodePolicy#fullSize()}.
+     */
+    public void setPictureDecodePolicy(@NonNull PictureDecodePolicy policy) {
+        pictureDecodePolicy = policy;
+        if (mImpl != null) {
+            mImpl.setPictureDecodePolicy(policy);
+        }
+    }
+
+    public PictureDecodePolicy getPictureDecodePolicy() {
+        return mImpl.getPictureDecodePolicy();
+    }
+
+    /**
+     * Gives a bitmap from the {@link CameraViewImpl.OnPictureTakenListener} back once the app
+     * is done with it, so that later pictures are decoded into it instead of a new bitmap.
+     */
+    public void releasePicture(Bitmap bitmap) {
+        mImpl.releasePicture(bitmap);
+    }
+
+    /**
+     * @return The number of preview frames handed to the frame listener so far.
+     */
+    public long getDeliveredFrameCount() {
+        return mImpl.getDeliveredFrameCount();
+    }
+
+    /**
+     * @return The number of preview frames dropped because the frame listener was busy.
+     */
+    public long getDroppedFrameCount() {
+        return mImpl.getDroppedFrameCount();
+    }
+
     public void takePicture() {
         mImpl.takePicture();
     }
 
+    /**
+     * Takes pictures right away when the preview reports focus and exposure already settled,
+     * instead of locking them first. Camera1 only knows about focus.
+     *
+     * @param fast Default is {@code false}.
+     */
+    public void setFastCapture(boolean fast) {
+        fastCapture = fast;
+        if (mImpl != null) {
+            mImpl.setFastCapture(fast);
+        }
+    }
+
+    public boolean isFastCapture() {
+        return mImpl.isFastCapture();
+    }
+
+    /**
+     * @return The time in nanoseconds from the last {@link #takePicture()} or
+     * {@link #takeBurst} call to the camera starting on the picture, or -1 before the first
+     * picture.
+     */
+    public long getShutterLatencyNanos() {
+        return mImpl.getShutterLatencyNanos();
+    }
+
+    /**
+     * Takes {@code count} pictures in a row, with focus and exposure locked once for all of
+     * them. They go to the picture listeners in the order they were taken; a
+     * {@link PictureBuffer} also tells the time and position of each shot.
+     *
+     * @param intervalMillis The time from the start of one shot to the start of the next, or 0
+     *                       for as fast as the camera can.
+     */
+    public void takeBurst(int count, long intervalMillis) {
+        mImpl.takeBurst(count, intervalMillis);
+    }
+
+    /**
+     * Takes a picture and writes its JPEG straight to {@code file} on a background thread. The
+     * picture is not decoded, and the picture listeners are not called for it.
+     *
+     * @param listener Called on the write thread once the file is written, or if it could not
+     *                 be, as when a picture or burst is already being taken.
+     */
+    public void takePicture(@NonNull File file, @Nullable CameraViewImpl.OnPictureSavedListener listener) {
+        mImpl.takePicture(file, listener);
+    }
+
+    /**
+     * Like {@link #takePicture(File, CameraViewImpl.OnPictureSavedListener)}, but writes to
+     * {@code channel} at its position and leaves it open.
+     */
+    public void takePicture(@NonNull FileChannel channel, @Nullable CameraViewImpl.OnPictureSavedListener listener) {
+        mImpl.takePicture(channel, listener);
+    }
+
     public void setPixelsPerOneZoomLevel (int pixels) {
         if (mImpl != null) {
             mImpl.setPixelsPerOneZoomLevel(pixels);
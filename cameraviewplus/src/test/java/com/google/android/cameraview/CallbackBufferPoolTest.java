@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CallbackBufferPoolTest {
+
+    private final List<byte[]> mQueued = new ArrayList<>();
+
+    private final CallbackBufferPool.BufferQueue mCamera = new CallbackBufferPool.BufferQueue() {
+        @Override
+        public void addCallbackBuffer(byte[] buffer) {
+            mQueued.add(buffer);
+        }
+    };
+
+    @Test
+    public void testAttachQueuesEveryBuffer() {
+        CallbackBufferPool pool = new CallbackBufferPool(3);
+        pool.attach(mCamera, 4, 2);
+        assertThat(mQueued.size(), is(3));
+        assertThat(mQueued.get(0).length, is(12));
+        // Already there
+        pool.attach(mCamera, 4, 2);
+        assertThat(mQueued.size(), is(3));
+    }
+
+    @Test
+    public void testReleaseQueuesTheBufferOnce() {
+        CallbackBufferPool pool = new CallbackBufferPool(2);
+        pool.attach(mCamera, 4, 2);
+        byte[] data = mQueued.get(0);
+        mQueued.clear();
+        Frame frame = pool.frameFor(data);
+        assertThat(frame.getData(), is(sameInstance(data)));
+        frame.release();
+        assertThat(mQueued.size(), is(1));
+        // The camera has it; a second release must not queue it twice
+        frame.release();
+        assertThat(mQueued.size(), is(1));
+        assertThat(pool.frameFor(data), is(sameInstance(frame)));
+        frame.release();
+        assertThat(mQueued.size(), is(2));
+    }
+
+    @Test
+    public void testCapacityChangesTheRing() {
+        CallbackBufferPool pool = new CallbackBufferPool(2);
+        pool.attach(mCamera, 4, 2);
+        pool.setCapacity(4);
+        assertThat(mQueued.size(), is(4));
+        List<byte[]> buffers = new ArrayList<>(mQueued);
+        mQueued.clear();
+        pool.setCapacity(1);
+        // Taken out as they come back, not queued again
+        for (int i = 0; i < 3; i++) {
+            pool.frameFor(buffers.get(i)).release();
+        }
+        assertThat(mQueued.size(), is(0));
+        pool.frameFor(buffers.get(3)).release();
+        assertThat(mQueued.size(), is(1));
+    }
+
+    @Test
+    public void testDetachedBuffersAreNotQueued() {
+        CallbackBufferPool pool = new CallbackBufferPool(1);
+        pool.attach(mCamera, 4, 2);
+        Frame frame = pool.frameFor(mQueued.get(0));
+        pool.detachCamera();
+        frame.release();
+        assertThat(mQueued.size(), is(1));
+        assertThat(pool.isAttached(), is(false));
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FrameDispatcherTest {
+
+    private final FramePool mPool = new FramePool(8);
+
+    private final List<Frame> mDelivered = new ArrayList<>();
+
+    private final FrameDispatcher mDispatcher = new FrameDispatcher(new FrameDispatcher.Callback() {
+        @Override
+        public void onFrame(Frame frame) {
+            mDelivered.add(frame);
+        }
+    });
+
+    public FrameDispatcherTest() {
+        mPool.configure(4, 4);
+    }
+
+    @Test
+    public void testKeepLatest() {
+        Frame a = mPool.acquire();
+        Frame b = mPool.acquire();
+        assertThat(mDispatcher.offer(a, true), is(true));
+        assertThat(mDispatcher.offer(b, true), is(false));
+        mDispatcher.drain();
+        assertThat(mDelivered.size(), is(1));
+        assertThat(mDelivered.get(0), is(sameInstance(b)));
+        assertThat(a.mInUse, is(false));
+        assertThat(mDispatcher.getDroppedCount(), is(1L));
+        assertThat(mDispatcher.getDeliveredCount(), is(1L));
+    }
+
+    @Test
+    public void testQueue() {
+        mDispatcher.setPolicy(FrameDeliveryPolicy.queue(2));
+        Frame a = mPool.acquire();
+        Frame b = mPool.acquire();
+        Frame c = mPool.acquire();
+        mDispatcher.offer(a, true);
+        mDispatcher.offer(b, true);
+        mDispatcher.offer(c, true);
+        mDispatcher.drain();
+        assertThat(mDelivered.size(), is(2));
+        assertThat(mDelivered.get(0), is(sameInstance(b)));
+        assertThat(mDelivered.get(1), is(sameInstance(c)));
+        assertThat(mDispatcher.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void testDrain_reschedules() {
+        assertThat(mDispatcher.offer(mPool.acquire(), true), is(true));
+        mDispatcher.drain();
+        assertThat(mDispatcher.offer(mPool.acquire(), true), is(true));
+    }
+
+    @Test
+    public void testBlockProducer() throws Exception {
+        mDispatcher.setPolicy(FrameDeliveryPolicy.blockProducer());
+        final Frame a = mPool.acquire();
+        final Frame b = mPool.acquire();
+        mDispatcher.offer(a, true);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mDispatcher.offer(b, true);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertThat(producer.isAlive(), is(true));
+        mDispatcher.drain();
+        producer.join(1000);
+        assertThat(producer.isAlive(), is(false));
+        mDispatcher.drain();
+        assertThat(mDelivered.size(), is(2));
+        assertThat(mDispatcher.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void testBlockProducer_cannotBlock() {
+        mDispatcher.setPolicy(FrameDeliveryPolicy.blockProducer());
+        mDispatcher.offer(mPool.acquire(), false);
+        mDispatcher.offer(mPool.acquire(), false);
+        mDispatcher.drain();
+        assertThat(mDelivered.size(), is(2));
+    }
+
+    @Test
+    public void testClear() {
+        Frame a = mPool.acquire();
+        mDispatcher.offer(a, true);
+        mDispatcher.clear();
+        assertThat(a.mInUse, is(false));
+        mDispatcher.drain();
+        assertThat(mDelivered.size(), is(0));
+        assertThat(mDispatcher.offer(mPool.acquire(), true), is(true));
+    }
+
+    @Test
+    public void testClear_whileDraining() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final List<Frame> delivered = new ArrayList<>();
+        final FrameDispatcher dispatcher = new FrameDispatcher(new FrameDispatcher.Callback() {
+            @Override
+            public void onFrame(Frame frame) {
+                synchronized (delivered) {
+                    delivered.add(frame);
+                }
+                entered.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        dispatcher.setPolicy(FrameDeliveryPolicy.queue(4));
+        Frame a = mPool.acquire();
+        Frame b = mPool.acquire();
+        dispatcher.offer(a, true);
+        Thread drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.drain();
+            }
+        });
+        drainer.start();
+        assertThat(entered.await(5, TimeUnit.SECONDS), is(true));
+        dispatcher.clear();
+        assertThat(dispatcher.offer(b, true), is(true));
+        // A second drain would deliver b alongside a
+        dispatcher.drain();
+        synchronized (delivered) {
+            assertThat(delivered.size(), is(1));
+        }
+        resume.countDown();
+        drainer.join(5000);
+        assertThat(delivered.size(), is(2));
+        assertThat(delivered.get(1), is(sameInstance(b)));
+        assertThat(dispatcher.offer(mPool.acquire(), true), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQueue_invalidDepth() {
+        FrameDeliveryPolicy.queue(0);
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class FrameFanOutTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final FramePool mPool = new FramePool(2);
+
+    private final FrameFanOut mFanOut = new FrameFanOut();
+
+    private final List<FrameFanOut.Consumer> mSelected = new ArrayList<>();
+
+    public FrameFanOutTest() {
+        mPool.configure(4, 4);
+    }
+
+    private static class Holder implements CameraViewImpl.OnFrameAvailableListener {
+
+        final List<Frame> mFrames = new ArrayList<>();
+
+        @Override
+        public void onFrameAvailable(Frame frame) {
+            mFrames.add(frame);
+        }
+
+    }
+
+    private void produce(long now) {
+        mFanOut.select(now, mSelected);
+        Frame frame = mPool.acquire();
+        mFanOut.deliver(frame, mSelected, false);
+        mSelected.clear();
+        frame.release();
+    }
+
+    @Test
+    public void testSharedFrame() {
+        Holder a = new Holder();
+        Holder b = new Holder();
+        mFanOut.add(a, DIRECT, FrameDeliveryPolicy.keepLatest(), 0f);
+        mFanOut.add(b, DIRECT, FrameDeliveryPolicy.keepLatest(), 0f);
+        produce(0);
+        Frame frame = a.mFrames.get(0);
+        assertThat(b.mFrames.get(0), is(sameInstance(frame)));
+        a.mFrames.get(0).release();
+        assertThat(frame.mInUse, is(true));
+        b.mFrames.get(0).release();
+        assertThat(frame.mInUse, is(false));
+        assertThat(mPool.acquire(), is(sameInstance(frame)));
+    }
+
+    @Test
+    public void testRateLimit() {
+        Holder fast = new Holder();
+        Holder slow = new Holder();
+        mFanOut.add(fast, DIRECT, FrameDeliveryPolicy.keepLatest(), 0f);
+        mFanOut.add(slow, DIRECT, FrameDeliveryPolicy.keepLatest(), 10f);
+        for (int i = 0; i < 30; i++) {
+            produce(i * 33000000L);
+        }
+        assertThat(fast.mFrames.size(), is(30));
+        assertThat(slow.mFrames.size(), is(10));
+    }
+
+    @Test
+    public void testSelect_nobodyDue() {
+        mFanOut.add(new Holder(), DIRECT, FrameDeliveryPolicy.keepLatest(), 1f);
+        mFanOut.select(0, mSelected);
+        assertThat(mSelected.size(), is(1));
+        mSelected.clear();
+        mFanOut.select(1000, mSelected);
+        assertThat(mSelected.size(), is(0));
+    }
+
+    @Test
+    public void testRemove() {
+        Holder a = new Holder();
+        mFanOut.add(a, DIRECT, FrameDeliveryPolicy.keepLatest(), 0f);
+        mFanOut.remove(a);
+        assertThat(mFanOut.isEmpty(), is(true));
+        produce(0);
+        assertThat(a.mFrames.size(), is(0));
+    }
+
+    @Test
+    public void testRejectedExecution_releases() {
+        mFanOut.add(new Holder(), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, FrameDeliveryPolicy.keepLatest(), 0f);
+        mFanOut.select(0, mSelected);
+        Frame frame = mPool.acquire();
+        mFanOut.deliver(frame, mSelected, false);
+        frame.release();
+        assertThat(frame.mInUse, is(false));
+    }
+
+}
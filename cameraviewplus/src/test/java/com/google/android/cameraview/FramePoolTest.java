@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class FramePoolTest {
+
+    @Test
+    public void testAcquire_geometry() {
+        FramePool pool = new FramePool(2);
+        pool.configure(640, 480);
+        Frame frame = pool.acquire();
+        assertThat(frame.getWidth(), is(640));
+        assertThat(frame.getHeight(), is(480));
+        assertThat(frame.getData().length, is(640 * 480 * 3 / 2));
+    }
+
+    @Test
+    public void testRelease_reused() {
+        FramePool pool = new FramePool(2);
+        pool.configure(64, 48);
+        Frame frame = pool.acquire();
+        frame.release();
+        assertThat(pool.acquire(), is(sameInstance(frame)));
+    }
+
+    @Test
+    public void testRelease_twice() {
+        FramePool pool = new FramePool(2);
+        pool.configure(64, 48);
+        Frame frame = pool.acquire();
+        frame.release();
+        frame.release();
+        assertThat(pool.acquire(), is(sameInstance(frame)));
+        assertThat(pool.acquire(), is(not(sameInstance(frame))));
+    }
+
+    @Test
+    public void testConfigure_dropsOldGeometry() {
+        FramePool pool = new FramePool(2);
+        pool.configure(64, 48);
+        Frame pooled = pool.acquire();
+        Frame inFlight = pool.acquire();
+        pooled.release();
+        pool.configure(32, 24);
+        inFlight.release();
+        Frame frame = pool.acquire();
+        assertThat(frame, is(not(sameInstance(pooled))));
+        assertThat(frame, is(not(sameInstance(inFlight))));
+        assertThat(frame.getWidth(), is(32));
+    }
+
+    @Test
+    public void testRetain() {
+        FramePool pool = new FramePool(2);
+        pool.configure(64, 48);
+        Frame frame = pool.acquire();
+        frame.retain();
+        frame.release();
+        assertThat(frame.mInUse, is(true));
+        frame.release();
+        assertThat(frame.mInUse, is(false));
+        assertThat(pool.acquire(), is(sameInstance(frame)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRetain_released() {
+        FramePool pool = new FramePool(2);
+        pool.configure(64, 48);
+        Frame frame = pool.acquire();
+        frame.release();
+        frame.retain();
+    }
+
+    @Test
+    public void testConfigure_luma() {
+        FramePool pool = new FramePool(2);
+        pool.configure(64, 48);
+        Frame nv21 = pool.acquire();
+        nv21.release();
+        pool.configure(64, 48, Constants.FRAME_FORMAT_LUMA);
+        Frame frame = pool.acquire();
+        assertThat(frame, is(not(sameInstance(nv21))));
+        assertThat(frame.getFormat(), is(Constants.FRAME_FORMAT_LUMA));
+        assertThat(frame.getData().length, is(64 * 48));
+    }
+
+    @Test
+    public void testDetach_luma() {
+        FramePool pool = new FramePool(2);
+        pool.configure(4, 2);
+        Frame frame = pool.acquire();
+        frame.getData()[7] = 7;
+        byte[] luma = frame.detach(8);
+        assertThat(luma.length, is(8));
+        assertThat(luma[7], is((byte) 7));
+        // Only a copy left the pool, so the buffer is reused
+        assertThat(pool.acquire(), is(sameInstance(frame)));
+    }
+
+    @Test
+    public void testConfigure_direct() {
+        FramePool pool = new FramePool(2);
+        pool.configure(5, 3);
+        Frame heap = pool.acquire();
+        heap.release();
+        assertThat(heap.isDirect(), is(false));
+        assertThat(heap.getBuffer().array(), is(sameInstance(heap.getData())));
+        pool.configure(5, 3, Constants.FRAME_FORMAT_NV21, true);
+        Frame frame = pool.acquire();
+        assertThat(frame, is(not(sameInstance(heap))));
+        assertThat(frame.isDirect(), is(true));
+        ByteBuffer buffer = frame.getBuffer();
+        assertThat(buffer.isDirect(), is(true));
+        assertThat(buffer.order(), is(ByteOrder.nativeOrder()));
+        assertThat(buffer.position(), is(0));
+        assertThat(buffer.limit(), is(22));
+        assertThat(buffer.capacity(), is(24));
+        assertThat(frame.getPyramidLevelCount(), is(0));
+        assertThat(frame.preparePyramid(2).length, is(0));
+        frame.release();
+        assertThat(pool.acquire(), is(sameInstance(frame)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetData_direct() {
+        FramePool pool = new FramePool(1);
+        pool.configure(4, 2, Constants.FRAME_FORMAT_LUMA, true);
+        pool.acquire().getData();
+    }
+
+    @Test
+    public void testDetach_direct() {
+        FramePool pool = new FramePool(1);
+        pool.configure(4, 2, Constants.FRAME_FORMAT_NV21, true);
+        Frame frame = pool.acquire();
+        frame.getBuffer().put(7, (byte) 7);
+        byte[] luma = frame.detach(8);
+        assertThat(luma.length, is(8));
+        assertThat(luma[7], is((byte) 7));
+        assertThat(pool.acquire(), is(sameInstance(frame)));
+    }
+
+    @Test
+    public void testCapacity() {
+        FramePool pool = new FramePool(1);
+        pool.configure(64, 48);
+        Frame a = pool.acquire();
+        Frame b = pool.acquire();
+        a.release();
+        b.release();
+        assertThat(pool.acquire(), is(sameInstance(a)));
+        assertThat(pool.acquire(), is(not(sameInstance(b))));
+    }
+
+    @Test
+    public void testConvert_noAllocationAfterWarmUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        int width = 640;
+        int height = 480;
+        // Typical semi-planar layout: padded rows, interleaved chroma with a pixel stride of 2
+        int rowStride = width + 64;
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * height);
+        ByteBuffer u = ByteBuffer.allocateDirect(rowStride * height / 2);
+        ByteBuffer v = ByteBuffer.allocateDirect(rowStride * height / 2);
+        byte[] rowData = new byte[rowStride];
+        FramePool pool = new FramePool(FramePool.DEFAULT_CAPACITY);
+        pool.configure(width, height);
+
+        for (int i = 0; i < 50; i++) {
+            convert(pool, y, u, v, rowStride, rowData).release();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; i++) {
+            convert(pool, y, u, v, rowStride, rowData).release();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("Allocated " + allocated + " bytes after warm-up",
+                allocated < Frame.nv21Size(width, height));
+    }
+
+    private static Frame convert(FramePool pool, ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                 int rowStride, byte[] rowData) {
+        Frame frame = pool.acquire();
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        byte[] data = frame.getData();
+        Utils.copyPlane(y, 0, rowStride, 1, width, height, data, 0, 1, rowData);
+        Utils.copyPlane(u, 0, rowStride, 2, width / 2, height / 2, data, width * height + 1, 2,
+                rowData);
+        Utils.copyPlane(v, 0, rowStride, 2, width / 2, height / 2, data, width * height, 2,
+                rowData);
+        return frame;
+    }
+
+}
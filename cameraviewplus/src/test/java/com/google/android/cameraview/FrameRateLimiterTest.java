@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class FrameRateLimiterTest {
+
+    private static final long FRAME = 33000000L; // About 30 fps
+
+    private final FrameRateLimiter mLimiter = new FrameRateLimiter();
+
+    @Test
+    public void testUnlimited() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(mLimiter.accept(i * FRAME), is(true));
+        }
+        assertThat(mLimiter.getSkippedCount(), is(0L));
+    }
+
+    @Test
+    public void testTargetFps() {
+        mLimiter.setTargetFps(10f);
+        int accepted = 0;
+        for (int i = 0; i < 30; i++) {
+            if (mLimiter.accept(i * FRAME)) accepted++;
+        }
+        // 30 frames over about a second
+        assertThat(accepted, is(10));
+        assertThat(mLimiter.getSkippedCount(), is(20L));
+    }
+
+    @Test
+    public void testAdaptive() {
+        mLimiter.setAdaptive(true);
+        mLimiter.onProcessed(3 * FRAME - 1);
+        assertThat(mLimiter.accept(0), is(true));
+        assertThat(mLimiter.accept(FRAME), is(false));
+        assertThat(mLimiter.accept(2 * FRAME), is(false));
+        assertThat(mLimiter.accept(3 * FRAME), is(true));
+    }
+
+    @Test
+    public void testAdaptive_average() {
+        mLimiter.onProcessed(800);
+        mLimiter.onProcessed(0);
+        assertThat(mLimiter.getAverageProcessingNanos(), is(700L));
+    }
+
+    @Test
+    public void testAdaptive_off() {
+        mLimiter.onProcessed(10 * FRAME);
+        assertThat(mLimiter.accept(0), is(true));
+        assertThat(mLimiter.accept(FRAME), is(true));
+    }
+
+}
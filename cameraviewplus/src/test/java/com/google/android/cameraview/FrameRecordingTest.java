@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class FrameRecordingTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("frames", ".raw");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /**
+     * Records {@code count} frames of the given geometry, 33 ms apart, each filled with its
+     * index.
+     */
+    static void record(File file, int count, int width, int height, int format,
+                       int rotationDegrees) throws IOException {
+        FramePool pool = new FramePool(1);
+        pool.configure(width, height, format);
+        FrameRecorder recorder = new FrameRecorder(file);
+        for (int i = 0; i < count; i++) {
+            Frame frame = pool.acquire();
+            Arrays.fill(frame.getData(), (byte) i);
+            frame.setRotationDegrees(rotationDegrees);
+            frame.getMetadata().set(100 + i, 0, i * 33000000L, 0, 0);
+            recorder.onFrameAvailable(frame);
+            assertThat(frame.mInUse, is(false));
+        }
+        assertThat(recorder.getFrameCount(), is(count));
+        recorder.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        record(mFile, 3, 4, 2, Constants.FRAME_FORMAT_NV21, -90);
+        assertThat(mFile.length(), is((long) FrameRecorder.HEADER_SIZE
+                + 3 * 12 + 3 * FrameRecorder.INDEX_ENTRY_SIZE));
+        FrameRecording recording = new FrameRecording(mFile);
+        assertThat(recording.getFrameCount(), is(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(recording.getTimestamp(i), is(i * 33000000L));
+            assertThat(recording.getSequenceNumber(i), is(100L + i));
+            assertThat(recording.getWidth(i), is(4));
+            assertThat(recording.getHeight(i), is(2));
+            assertThat(recording.getFormat(i), is(Constants.FRAME_FORMAT_NV21));
+            assertThat(recording.getRotationDegrees(i), is(-90));
+            ByteBuffer data = recording.getData(i);
+            assertThat(data.remaining(), is(12));
+            assertThat(data.isReadOnly(), is(true));
+            assertThat(data.get(0), is((byte) i));
+            assertThat(data.get(11), is((byte) i));
+        }
+        byte[] out = new byte[12];
+        recording.readData(2, out);
+        assertThat(out[5], is((byte) 2));
+        recording.close();
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        record(mFile, 0, 4, 2, Constants.FRAME_FORMAT_LUMA, 0);
+        FrameRecording recording = new FrameRecording(mFile);
+        assertThat(recording.getFrameCount(), is(0));
+        recording.close();
+    }
+
+    @Test
+    public void testFramesAfterCloseAreReleased() throws IOException {
+        FramePool pool = new FramePool(1);
+        pool.configure(4, 2, Constants.FRAME_FORMAT_LUMA);
+        FrameRecorder recorder = new FrameRecorder(mFile);
+        recorder.close();
+        Frame frame = pool.acquire();
+        recorder.onFrameAvailable(frame);
+        assertThat(frame.mInUse, is(false));
+        assertThat(recorder.getFrameCount(), is(0));
+    }
+
+    @Test
+    public void testUnfinishedFileIsRejected() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(mFile);
+        try {
+            new FrameRecording(mFile);
+            fail();
+        } catch (IOException e) {
+            // Expected: no header yet
+        }
+        recorder.close();
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+public class FrameRingBufferTest {
+
+    private static final long MS = 1000000L;
+
+    private final FramePool mPool = new FramePool(1);
+
+    {
+        mPool.configure(4, 2, Constants.FRAME_FORMAT_LUMA);
+    }
+
+    /**
+     * Passes a frame taken at {@code timestamp} ms whose pixels all equal {@code value}.
+     */
+    private void feed(FrameRingBuffer ring, long sequence, long timestamp, int value) {
+        Frame frame = mPool.acquire();
+        for (int i = 0; i < 8; i++) {
+            frame.getData()[i] = (byte) value;
+        }
+        frame.getMetadata().set(sequence, 0, timestamp * MS, timestamp * MS, 0);
+        ring.onFrameAvailable(frame);
+        assertThat(frame.mInUse, is(false));
+    }
+
+    @Test
+    public void testCapacityFromMemoryCap() {
+        FrameRingBuffer ring = new FrameRingBuffer(8 * 5 + 3, 1000 * MS);
+        assertThat(ring.getCapacity(), is(0));
+        feed(ring, 0, 0, 0);
+        assertThat(ring.getCapacity(), is(5));
+    }
+
+    @Test
+    public void testNearest() {
+        FrameRingBuffer ring = new FrameRingBuffer(8 * 5, 1000 * MS);
+        for (int i = 0; i < 5; i++) {
+            feed(ring, i, i * 33, i);
+        }
+        FrameRingBuffer.BufferedFrame frame = ring.nearest(70 * MS);
+        assertThat(frame.getTimestamp(), is(66 * MS));
+        assertThat(frame.getSequenceNumber(), is(2L));
+        assertThat(frame.getWidth(), is(4));
+        assertThat(frame.getFormat(), is(Constants.FRAME_FORMAT_LUMA));
+        ByteBuffer buffer = frame.getBuffer();
+        assertThat(buffer.isReadOnly(), is(true));
+        assertThat(buffer.isDirect(), is(true));
+        assertThat(buffer.order(), is(ByteOrder.nativeOrder()));
+        assertThat(buffer.remaining(), is(8));
+        assertThat(buffer.get(7), is((byte) 2));
+        frame.release();
+    }
+
+    @Test
+    public void testOldFramesOverwritten() {
+        FrameRingBuffer ring = new FrameRingBuffer(8 * 3, 1000 * MS);
+        for (int i = 0; i < 10; i++) {
+            feed(ring, i, i * 33, i);
+        }
+        // Only the last 3 frames are left
+        assertThat(ring.nearest(0).getSequenceNumber(), is(7L));
+    }
+
+    @Test
+    public void testAround() {
+        FrameRingBuffer ring = new FrameRingBuffer(8 * 10, 1000 * MS);
+        for (int i = 0; i < 10; i++) {
+            feed(ring, i, i * 10, i);
+        }
+        List<FrameRingBuffer.BufferedFrame> frames = ring.around(52 * MS, 3);
+        assertThat(frames.size(), is(3));
+        // In the order they were taken
+        assertThat(frames.get(0).getSequenceNumber(), is(4L));
+        assertThat(frames.get(1).getSequenceNumber(), is(5L));
+        assertThat(frames.get(2).getSequenceNumber(), is(6L));
+        for (FrameRingBuffer.BufferedFrame frame : frames) {
+            frame.release();
+        }
+        assertThat(ring.around(0, 20).size(), is(10));
+    }
+
+    @Test
+    public void testWindow() {
+        FrameRingBuffer ring = new FrameRingBuffer(8 * 10, 100 * MS);
+        for (int i = 0; i < 10; i++) {
+            feed(ring, i, i * 50, i);
+        }
+        // Frames more than 100 ms older than the newest (450 ms) are out
+        assertThat(ring.nearest(0).getTimestamp(), is(350 * MS));
+        assertThat(ring.around(0, 10).size(), is(3));
+    }
+
+    @Test
+    public void testHeldFramesAreNotOverwritten() {
+        FrameRingBuffer ring = new FrameRingBuffer(8 * 2, 1000 * MS);
+        feed(ring, 0, 0, 0);
+        feed(ring, 1, 10, 1);
+        FrameRingBuffer.BufferedFrame first = ring.nearest(0);
+        FrameRingBuffer.BufferedFrame second = ring.nearest(10 * MS);
+        feed(ring, 2, 20, 2);
+        assertThat(ring.getDroppedCount(), is(1L));
+        assertThat(first.getBuffer().get(0), is((byte) 0));
+        first.release();
+        first.release();
+        feed(ring, 3, 30, 3);
+        assertThat(ring.getDroppedCount(), is(1L));
+        assertThat(ring.nearest(30 * MS).getSequenceNumber(), is(3L));
+        assertThat(second.getBuffer().get(0), is((byte) 1));
+        second.release();
+    }
+
+    @Test
+    public void testEmpty() {
+        FrameRingBuffer ring = new FrameRingBuffer(100, 1000 * MS);
+        assertThat(ring.nearest(0), is(nullValue()));
+    }
+
+}
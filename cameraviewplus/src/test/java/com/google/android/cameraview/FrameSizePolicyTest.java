@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class FrameSizePolicyTest {
+
+    private static SortedSet<Size> sizes(int... dimensions) {
+        SortedSet<Size> sizes = new TreeSet<>();
+        for (int i = 0; i < dimensions.length; i += 2) {
+            sizes.add(new Size(dimensions[i], dimensions[i + 1]));
+        }
+        return sizes;
+    }
+
+    private final SortedSet<Size> mSizes = sizes(176, 144, 320, 240, 360, 270, 640, 480,
+            1280, 960, 1440, 1080);
+
+    @Test
+    public void testLargest() {
+        assertThat(FrameSizePolicy.largest().select(mSizes), is(new Size(1440, 1080)));
+    }
+
+    @Test
+    public void testClosestTo() {
+        assertThat(FrameSizePolicy.closestTo(300, 230).select(mSizes), is(new Size(320, 240)));
+        // Portrait targets are turned landscape
+        assertThat(FrameSizePolicy.closestTo(480, 640).select(mSizes), is(new Size(640, 480)));
+    }
+
+    @Test
+    public void testMaxPixels() {
+        assertThat(FrameSizePolicy.maxPixels(640 * 480).select(mSizes), is(new Size(640, 480)));
+        assertThat(FrameSizePolicy.maxPixels(640 * 480 - 1).select(mSizes),
+                is(new Size(360, 270)));
+        // Nothing fits: the smallest
+        assertThat(FrameSizePolicy.maxPixels(100).select(mSizes), is(new Size(176, 144)));
+    }
+
+    @Test
+    public void testAtLeast() {
+        assertThat(FrameSizePolicy.atLeast(300, 300).select(mSizes), is(new Size(640, 480)));
+        assertThat(FrameSizePolicy.atLeast(320, 240).select(mSizes), is(new Size(320, 240)));
+        // Nothing is large enough: the largest
+        assertThat(FrameSizePolicy.atLeast(4000, 3000).select(mSizes), is(new Size(1440, 1080)));
+    }
+
+    @Test
+    public void testAligned() {
+        // 1440x1080 is not a multiple of 16; 1280x960 is
+        assertThat(FrameSizePolicy.largest().aligned(16).select(mSizes), is(new Size(1280, 960)));
+        // 360x270 is not aligned, 320x240 is
+        assertThat(FrameSizePolicy.closestTo(360, 270).aligned(16).select(mSizes),
+                is(new Size(320, 240)));
+        // No size is aligned to 1024: alignment is given up
+        assertThat(FrameSizePolicy.atLeast(300, 300).aligned(1024).select(mSizes),
+                is(new Size(640, 480)));
+    }
+
+    @Test
+    public void testEquals() {
+        assertThat(FrameSizePolicy.atLeast(320, 240).equals(FrameSizePolicy.atLeast(240, 320)),
+                is(true));
+        assertThat(FrameSizePolicy.atLeast(320, 240).aligned(16)
+                .equals(FrameSizePolicy.atLeast(320, 240)), is(false));
+        assertThat(FrameSizePolicy.largest().aligned(1), is(FrameSizePolicy.largest()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        FrameSizePolicy.closestTo(0, 240);
+    }
+
+}
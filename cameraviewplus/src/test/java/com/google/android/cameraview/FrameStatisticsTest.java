@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class FrameStatisticsTest {
+
+    @Test
+    public void testMeanAndHistogram() {
+        FrameStatistics statistics = new FrameStatistics();
+        statistics.reset(4, 2, 1, 1);
+        statistics.compute(new byte[]{0, 0, 10, 10, 10, 10, (byte) 255, (byte) 255});
+        assertThat(statistics.getMeanLuma(), is(68.75f));
+        int[] histogram = statistics.getHistogram();
+        assertThat(histogram[0], is(2));
+        assertThat(histogram[10], is(4));
+        assertThat(histogram[255], is(2));
+    }
+
+    @Test
+    public void testTiles() {
+        // 5x3 pixels in a 2x2 grid: tiles are 2 or 3 pixels wide and 1 or 2 rows high
+        byte[] luma = new byte[]{
+                10, 10, 20, 20, 20,
+                10, 10, 20, 20, 20,
+                30, 30, 40, 40, (byte) 130};
+        FrameStatistics statistics = new FrameStatistics();
+        statistics.reset(5, 3, 2, 2);
+        statistics.compute(luma);
+        assertThat(statistics.getGridColumns(), is(2));
+        assertThat(statistics.getGridRows(), is(2));
+        assertThat(statistics.getTileMeanLuma(0, 0), is(10f));
+        assertThat(statistics.getTileMeanLuma(1, 0), is(20f));
+        assertThat(statistics.getTileMeanLuma(0, 1), is(30f));
+        assertThat(statistics.getTileMeanLuma(1, 1), is(70f));
+    }
+
+    @Test
+    public void testGridClampedToFrameSize() {
+        FrameStatistics statistics = new FrameStatistics();
+        statistics.reset(2, 1, 8, 8);
+        assertThat(statistics.getGridColumns(), is(2));
+        assertThat(statistics.getGridRows(), is(1));
+    }
+
+    @Test
+    public void testResetClearsPreviousFrame() {
+        FrameStatistics statistics = new FrameStatistics();
+        statistics.reset(2, 2, 1, 1);
+        statistics.compute(new byte[]{100, 100, 100, 100});
+        statistics.reset(2, 2, 1, 1);
+        statistics.compute(new byte[]{0, 0, 0, 0});
+        assertThat(statistics.getMeanLuma(), is(0f));
+        assertThat(statistics.getHistogram()[100], is(0));
+    }
+
+    @Test
+    public void testCopyPlane_fusedStatistics() {
+        byte[] plane = new byte[16 * 8];
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = (byte) (i * 7);
+        }
+        FrameStatistics fused = new FrameStatistics();
+        fused.reset(16, 8, 4, 3);
+        // Two halves, as when converted in row ranges
+        byte[] output = new byte[plane.length];
+        Utils.copyPlane(ByteBuffer.wrap(plane), 0, 16, 1, 16, 4, output, 0, 1, new byte[16],
+                null, fused);
+        Utils.copyPlane(ByteBuffer.wrap(plane), 64, 16, 1, 16, 4, output, 64, 1, new byte[16],
+                null, fused);
+        FrameStatistics separate = new FrameStatistics();
+        separate.reset(16, 8, 4, 3);
+        separate.compute(plane);
+        assertThat(fused.getMeanLuma(), is(separate.getMeanLuma()));
+        assertThat(fused.getHistogram(), is(separate.getHistogram()));
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 4; column++) {
+                assertThat(fused.getTileMeanLuma(column, row),
+                        is(separate.getTileMeanLuma(column, row)));
+            }
+        }
+    }
+
+    @Test
+    public void testLazyStatistics() {
+        FramePool pool = new FramePool(1);
+        pool.configure(2, 2);
+        Frame frame = pool.acquire();
+        System.arraycopy(new byte[]{2, 4, 6, 8}, 0, frame.getData(), 0, 4);
+        FrameMetadata metadata = frame.getMetadata();
+        assertThat(metadata.getStatistics() == null, is(true));
+        metadata.prepareStatistics(2, 2, 1, 1, true);
+        assertThat(metadata.getStatistics().getMeanLuma(), is(5f));
+        metadata.clearStatistics();
+        assertThat(metadata.getStatistics() == null, is(true));
+    }
+
+}
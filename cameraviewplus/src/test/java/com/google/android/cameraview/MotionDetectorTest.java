@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class MotionDetectorTest {
+
+    private static final int WIDTH = 128;
+    private static final int HEIGHT = 96;
+
+    /**
+     * A gray frame with some sensor-like noise and a bright square at {@code x}, {@code y}.
+     */
+    private static byte[] scene(int x, int y, int size, Random noise) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (byte) (100 + noise.nextInt(7) - 3);
+        }
+        for (int row = y; row < y + size; row++) {
+            for (int col = x; col < x + size; col++) {
+                luma[row * WIDTH + col] = (byte) 230;
+            }
+        }
+        return luma;
+    }
+
+    private final Random mNoise = new Random(42);
+
+    @Test
+    public void testFirstFrameHasNoReference() {
+        MotionDetector detector = new MotionDetector();
+        MotionDetector.Result result = detector.detect(scene(0, 0, 16, mNoise), WIDTH, HEIGHT);
+        assertThat(result.hasReference(), is(false));
+        assertThat(result.getMotionScore(), is(0f));
+    }
+
+    @Test
+    public void testStaticSceneWithNoise() {
+        MotionDetector detector = new MotionDetector();
+        for (int i = 0; i < 10; i++) {
+            MotionDetector.Result result = detector.detect(scene(32, 32, 16, mNoise), WIDTH,
+                    HEIGHT);
+            assertThat(result.getMovingBlockCount(), is(0));
+            assertThat(result.getRegions().isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void testMovingSquare() {
+        MotionDetector detector = new MotionDetector();
+        // 4x downsampling and 8 pixel blocks: blocks of 32x32 frame pixels, a 4x3 grid
+        detector.detect(scene(0, 0, 32, mNoise), WIDTH, HEIGHT);
+        MotionDetector.Result result = detector.detect(scene(64, 32, 32, mNoise), WIDTH,
+                HEIGHT);
+        assertThat(result.hasReference(), is(true));
+        assertThat(result.getColumns(), is(4));
+        assertThat(result.getRows(), is(3));
+        // The square left block (0, 0) and arrived in block (2, 1)
+        assertThat(result.isBlockMoving(0, 0), is(true));
+        assertThat(result.isBlockMoving(2, 1), is(true));
+        assertThat(result.getMovingBlockCount(), is(2));
+        assertThat(result.getMotionScore(), is(2f / 12));
+        assertThat(result.getRegions().size(), is(2));
+        MotionDetector.Region region = result.getRegions().get(0);
+        assertThat(region.getBlockCount(), is(1));
+        assertThat(region.getRight() - region.getLeft(), is(32));
+        assertThat(region.getBottom() - region.getTop(), is(32));
+    }
+
+    @Test
+    public void testAdjacentBlocksFormOneRegion() {
+        MotionDetector detector = new MotionDetector();
+        detector.detect(scene(0, 0, 1, mNoise), WIDTH, HEIGHT);
+        // Covers blocks (1, 1) to (2, 2)
+        MotionDetector.Result result = detector.detect(scene(32, 32, 64, mNoise), WIDTH,
+                HEIGHT);
+        assertThat(result.getRegions().size(), is(1));
+        MotionDetector.Region region = result.getRegions().get(0);
+        assertThat(region.getBlockCount(), is(4));
+        assertThat(region.getLeft(), is(32));
+        assertThat(region.getTop(), is(32));
+        assertThat(region.getRight(), is(96));
+        assertThat(region.getBottom(), is(96));
+    }
+
+    @Test
+    public void testSizeChangeResetsReference() {
+        MotionDetector detector = new MotionDetector();
+        detector.detect(scene(0, 0, 8, mNoise), WIDTH, HEIGHT);
+        MotionDetector.Result result = detector.detect(new byte[64 * 48], 64, 48);
+        assertThat(result.hasReference(), is(false));
+    }
+
+    @Test
+    public void testPyramidMatchesDownsampling() {
+        FramePool pool = new FramePool(2);
+        pool.configure(WIDTH, HEIGHT, Constants.FRAME_FORMAT_LUMA);
+        MotionDetector detector = new MotionDetector();
+        MotionDetector.Result result = null;
+        for (int x = 0; x <= 64; x += 64) {
+            Frame frame = pool.acquire();
+            System.arraycopy(scene(x, 32, 32, mNoise), 0, frame.getData(), 0, WIDTH * HEIGHT);
+            frame.preparePyramidLazily(2);
+            result = detector.detect(frame);
+            frame.release();
+        }
+        assertThat(result.getMovingBlockCount(), is(2));
+        assertThat(result.isBlockMoving(0, 1), is(true));
+        assertThat(result.isBlockMoving(2, 1), is(true));
+    }
+
+    @Test
+    public void testDirectFrames() {
+        FramePool pool = new FramePool(2);
+        pool.configure(WIDTH, HEIGHT, Constants.FRAME_FORMAT_LUMA, true);
+        MotionDetector detector = new MotionDetector();
+        MotionDetector.Result result = null;
+        for (int x = 0; x <= 64; x += 64) {
+            Frame frame = pool.acquire();
+            frame.getBuffer().put(scene(x, 32, 32, mNoise));
+            result = detector.detect(frame);
+            frame.release();
+        }
+        assertThat(result.getMovingBlockCount(), is(2));
+        assertThat(result.isBlockMoving(0, 1), is(true));
+        assertThat(result.isBlockMoving(2, 1), is(true));
+    }
+
+    @Test
+    public void testGate() {
+        FramePool pool = new FramePool(1);
+        pool.configure(WIDTH, HEIGHT, Constants.FRAME_FORMAT_LUMA);
+        final int[] passed = new int[1];
+        MotionGate gate = new MotionGate(new MotionDetector(),
+                new CameraViewImpl.OnFrameAvailableListener() {
+                    @Override
+                    public void onFrameAvailable(Frame frame) {
+                        passed[0]++;
+                        frame.release();
+                    }
+                });
+        // Idle, idle, motion, idle
+        int[] positions = {0, 0, 0, 64, 64};
+        for (int x : positions) {
+            Frame frame = pool.acquire();
+            System.arraycopy(scene(x, 0, 32, mNoise), 0, frame.getData(), 0, WIDTH * HEIGHT);
+            gate.onFrameAvailable(frame);
+            assertThat(frame.mInUse, is(false));
+        }
+        // The first frame, which has no reference, and the one with motion
+        assertThat(passed[0], is(2));
+        assertThat(gate.getPassedCount(), is(2L));
+        assertThat(gate.getBlockedCount(), is(3L));
+    }
+
+    @Test
+    public void testGateMinMotionScore() {
+        FramePool pool = new FramePool(1);
+        pool.configure(WIDTH, HEIGHT, Constants.FRAME_FORMAT_LUMA);
+        MotionGate gate = new MotionGate(new MotionDetector(),
+                new CameraViewImpl.OnFrameAvailableListener() {
+                    @Override
+                    public void onFrameAvailable(Frame frame) {
+                        frame.release();
+                    }
+                });
+        // Two of 12 blocks move; require a quarter of them
+        gate.setMinMotionScore(0.25f);
+        for (int x = 0; x <= 64; x += 64) {
+            Frame frame = pool.acquire();
+            System.arraycopy(scene(x, 0, 32, mNoise), 0, frame.getData(), 0, WIDTH * HEIGHT);
+            gate.onFrameAvailable(frame);
+        }
+        assertThat(gate.getPassedCount(), is(1L));
+        assertThat(gate.getBlockedCount(), is(1L));
+    }
+
+}
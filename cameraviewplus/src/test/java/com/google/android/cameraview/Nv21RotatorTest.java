@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class Nv21RotatorTest {
+
+    /**
+     * Rotating NV21 and then converting has to give what the converter gives when it rotates
+     * by itself, which is checked pixel by pixel in {@link YuvToRgbConverterTest}.
+     */
+    @Test
+    public void testRotate_matchesConverter() {
+        int width = 70;
+        int height = 38;
+        byte[] src = new byte[Frame.nv21Size(width, height)];
+        new Random(1).nextBytes(src);
+        byte[] rotated = new byte[src.length];
+        int[] expected = new int[width * height];
+        int[] actual = new int[width * height];
+        for (int degrees = -90; degrees < 360; degrees += 90) {
+            for (int m = 0; m < 2; m++) {
+                boolean mirror = m == 1;
+                Nv21Rotator.rotate(src, width, height, degrees, mirror, rotated);
+                YuvToRgbConverter.nv21ToArgb(src, width, height, degrees, mirror, 1, expected);
+                int w = YuvToRgbConverter.getOutputWidth(width, height, degrees, 1);
+                int h = YuvToRgbConverter.getOutputHeight(width, height, degrees, 1);
+                YuvToRgbConverter.nv21ToArgb(rotated, w, h, 0, false, 1, actual);
+                assertThat(degrees + (mirror ? " mirrored" : ""), actual, is(expected));
+            }
+        }
+    }
+
+    @Test
+    public void testRotateLuma() {
+        byte[] src = new byte[]{1, 2, 3, 4, 5, 6};
+        byte[] dst = new byte[6];
+        Nv21Rotator.rotateLuma(src, 3, 2, 90, false, dst);
+        assertThat(dst, is(new byte[]{4, 1, 5, 2, 6, 3}));
+        Nv21Rotator.rotateLuma(src, 3, 2, 0, true, dst);
+        assertThat(dst, is(new byte[]{3, 2, 1, 6, 5, 4}));
+    }
+
+    /**
+     * Prints the time to rotate a 1080p frame by a quarter turn. Runs with {@code -Pbenchmarks}
+     * only.
+     */
+    @Test
+    public void testBenchmark_1080p() {
+        assumeTrue(Boolean.getBoolean("cameraview.benchmarks"));
+        byte[] src = new byte[Frame.nv21Size(1920, 1080)];
+        new Random(2).nextBytes(src);
+        byte[] dst = new byte[src.length];
+        for (int i = 0; i < 20; i++) {
+            Nv21Rotator.rotate(src, 1920, 1080, 90, false, dst);
+        }
+        int iterations = 30;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Nv21Rotator.rotate(src, 1920, 1080, 90, false, dst);
+        }
+        long nanos = (System.nanoTime() - start) / iterations;
+        System.out.println(String.format("1080p NV21 rotated 90: %.2f ms", nanos / 1e6));
+    }
+
+}
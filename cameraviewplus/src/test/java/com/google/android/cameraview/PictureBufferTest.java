@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PictureBufferTest {
+
+    @Test
+    public void testSlicedToThePayload() {
+        ByteBuffer jpeg = ByteBuffer.allocateDirect(32);
+        jpeg.position(4);
+        jpeg.put((byte) 0xff);
+        jpeg.limit(14);
+        jpeg.position(4);
+        PictureBuffer picture = new PictureBuffer(jpeg, -90, 5L, null);
+        ByteBuffer buffer = picture.getBuffer();
+        assertThat(buffer.position(), is(0));
+        assertThat(buffer.limit(), is(10));
+        assertThat(buffer.get(0), is((byte) 0xff));
+        assertThat(buffer.isReadOnly(), is(true));
+        assertThat(buffer.isDirect(), is(true));
+        assertThat(picture.getRotationDegrees(), is(-90));
+        assertThat(picture.getTimestamp(), is(5L));
+        assertThat(picture.getBurstIndex(), is(0));
+        assertThat(picture.getBurstSize(), is(1));
+    }
+
+    @Test
+    public void testReleaseClosesTheImageOnce() {
+        final AtomicInteger closed = new AtomicInteger();
+        PictureBuffer picture = new PictureBuffer(ByteBuffer.allocate(4), 0, 0L,
+                new AutoCloseable() {
+                    @Override
+                    public void close() {
+                        closed.incrementAndGet();
+                    }
+                });
+        assertThat(picture.isReleased(), is(false));
+        picture.release();
+        picture.release();
+        assertThat(picture.isReleased(), is(true));
+        assertThat(closed.get(), is(1));
+    }
+
+}
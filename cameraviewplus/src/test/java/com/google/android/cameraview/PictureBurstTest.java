@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class PictureBurstTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testShotsArePacedFromTheFirst() {
+        PictureBurst burst = new PictureBurst(3, 100);
+        assertThat(burst.isPaced(), is(true));
+        assertThat(burst.getDelayNanos(0), is(0L));
+        assertThat(burst.startShot(1000 * MS), is(true));
+        // Due 100 ms after the first, however late the previous one was
+        assertThat(burst.getDelayNanos(1040 * MS), is(60 * MS));
+        assertThat(burst.startShot(1100 * MS), is(true));
+        assertThat(burst.getDelayNanos(1250 * MS), is(0L));
+        assertThat(burst.startShot(1250 * MS), is(true));
+        assertThat(burst.hasShotsToStart(), is(false));
+        assertThat(burst.startShot(1300 * MS), is(false));
+    }
+
+    @Test
+    public void testUnpacedBurst() {
+        PictureBurst burst = new PictureBurst(2, 0);
+        assertThat(burst.isPaced(), is(false));
+        burst.startShot(0);
+        assertThat(burst.getDelayNanos(0), is(0L));
+    }
+
+    @Test
+    public void testFinishedOnceEveryShotIsCapturedAndDelivered() {
+        PictureBurst burst = new PictureBurst(3, 0);
+        assertThat(burst.nextDelivery(), is(0));
+        assertThat(burst.shotCompleted(false), is(false));
+        // A failed shot is never delivered
+        assertThat(burst.shotCompleted(true), is(false));
+        assertThat(burst.nextDelivery(), is(1));
+        assertThat(burst.isFinished(), is(false));
+        assertThat(burst.shotCompleted(false), is(true));
+        assertThat(burst.isFinished(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyBurst() {
+        new PictureBurst(0, 0);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class PictureDecodePolicyTest {
+
+    @Test
+    public void testFullSize() {
+        PictureDecodePolicy policy = PictureDecodePolicy.fullSize();
+        assertThat(policy.getScale(4000, 3000), is(1f));
+        assertThat(policy.isUpright(), is(false));
+    }
+
+    @Test
+    public void testFitInside() {
+        PictureDecodePolicy policy = PictureDecodePolicy.fitInside(1080, 1920);
+        assertThat(policy.getWidth(), is(1920));
+        assertThat(policy.getHeight(), is(1080));
+        // 4000x3000 is held back by the height: 1080 / 3000
+        float scale = policy.getScale(4000, 3000);
+        assertThat(scale, is(0.36f));
+        assertThat(PictureDecodePolicy.scaled(4000, scale), is(1440));
+        assertThat(PictureDecodePolicy.scaled(3000, scale), is(1080));
+        // Portrait pictures are compared in landscape too
+        assertThat(policy.getScale(3000, 4000), is(scale));
+        // Never scaled up
+        assertThat(policy.getScale(640, 480), is(1f));
+    }
+
+    @Test
+    public void testMaxPixels() {
+        PictureDecodePolicy policy = PictureDecodePolicy.maxPixels(3000000);
+        assertThat(policy.getScale(4000, 3000), is(0.5f));
+        assertThat(policy.getScale(2000, 1500), is(1f));
+    }
+
+    @Test
+    public void testSampleSize() {
+        assertThat(PictureDecodePolicy.getSampleSize(1f), is(1));
+        assertThat(PictureDecodePolicy.getSampleSize(0.6f), is(1));
+        assertThat(PictureDecodePolicy.getSampleSize(0.5f), is(2));
+        assertThat(PictureDecodePolicy.getSampleSize(0.36f), is(2));
+        assertThat(PictureDecodePolicy.getSampleSize(0.1f), is(8));
+    }
+
+    @Test
+    public void testUpright() {
+        PictureDecodePolicy policy = PictureDecodePolicy.fitInside(1920, 1080);
+        PictureDecodePolicy upright = policy.upright();
+        assertThat(upright.isUpright(), is(true));
+        assertThat(upright.getWidth(), is(1920));
+        assertThat(upright.equals(policy), is(false));
+        assertThat(upright, is(PictureDecodePolicy.fitInside(1080, 1920).upright()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        PictureDecodePolicy.fitInside(0, 1080);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PictureDecoderTest {
+
+    @Test
+    public void testBurstIsNotRejected() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        PictureDecoder.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 1);
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        final CountDownLatch done = new CountDownLatch(10);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < 4; i++) {
+            PictureDecoder.execute(task, 1);
+        }
+        boolean rejected = false;
+        try {
+            PictureDecoder.execute(task, 1);
+        } catch (RejectedExecutionException e) {
+            rejected = true;
+        }
+        assertThat(rejected, is(true));
+        // A burst of 10 may have all of its pictures waiting
+        for (int i = 0; i < 6; i++) {
+            PictureDecoder.execute(task, 10);
+        }
+        release.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(ran.get(), is(10));
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PictureWriterTest {
+
+    private File mFile;
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    private final AtomicReference<Object> mResult = new AtomicReference<>();
+
+    private final CameraViewImpl.OnPictureSavedListener mListener =
+            new CameraViewImpl.OnPictureSavedListener() {
+                @Override
+                public void onPictureSaved(int rotationDegrees) {
+                    mResult.set(rotationDegrees);
+                    mDone.countDown();
+                }
+
+                @Override
+                public void onPictureSaveFailed(Exception e) {
+                    mResult.set(e);
+                    mDone.countDown();
+                }
+            };
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("picture", ".jpg");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private static ByteBuffer jpeg() {
+        // Only the remaining bytes are written
+        ByteBuffer data = ByteBuffer.allocateDirect(16);
+        data.put(new byte[]{(byte) 0xff, (byte) 0xd8, 1, 2, 3, (byte) 0xff, (byte) 0xd9});
+        data.flip();
+        return data;
+    }
+
+    @Test
+    public void testWritesFileAndClosesImage() throws Exception {
+        final AtomicBoolean closed = new AtomicBoolean();
+        AutoCloseable image = new AutoCloseable() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        new PictureWriter(mFile, mListener).write(jpeg(), image, -90);
+        assertThat(mDone.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(mResult.get(), is((Object) (-90)));
+        assertThat(closed.get(), is(true));
+        assertThat(mFile.length(), is(7L));
+    }
+
+    @Test
+    public void testWritesChannelAtItsPosition() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        FileChannel channel = file.getChannel();
+        channel.write(ByteBuffer.wrap(new byte[]{9, 9}));
+        new PictureWriter(channel, mListener).write(jpeg(), null, 0);
+        assertThat(mDone.await(5, TimeUnit.SECONDS), is(true));
+        // Left open for the caller
+        assertThat(channel.isOpen(), is(true));
+        assertThat(channel.position(), is(9L));
+        file.close();
+        assertThat(mFile.length(), is(9L));
+    }
+
+    @Test
+    public void testFailWritesNothing() throws Exception {
+        IllegalStateException refused = new IllegalStateException();
+        new PictureWriter(mFile, mListener).fail(refused);
+        assertThat(mDone.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(mResult.get(), is((Object) refused));
+        assertThat(mFile.length(), is(0L));
+    }
+
+    @Test
+    public void testReportsRuntimeFailure() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        final AtomicBoolean closed = new AtomicBoolean();
+        AutoCloseable image = new AutoCloseable() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        // Writing to a read-only channel throws a RuntimeException
+        new PictureWriter(file.getChannel(), mListener).write(jpeg(), image, 0);
+        assertThat(mDone.await(5, TimeUnit.SECONDS), is(true));
+        file.close();
+        assertThat(mResult.get() instanceof NonWritableChannelException, is(true));
+        assertThat(closed.get(), is(true));
+    }
+
+    @Test
+    public void testReportsFailure() throws Exception {
+        File missing = new File(mFile.getParentFile(), "missing/picture.jpg");
+        new PictureWriter(missing, mListener).write(jpeg(), null, 0);
+        assertThat(mDone.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(mResult.get() instanceof IOException, is(true));
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class PlanarFrameTest {
+
+    @Test
+    public void testNv21Planes() {
+        FramePool pool = new FramePool(1);
+        pool.configure(4, 2);
+        Frame frame = pool.acquire();
+        byte[] data = frame.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        PlanarFrame planar = new PlanarFrame(frame, 42L);
+        PlanarFrame.Plane[] planes = planar.getPlanes();
+        assertThat(planes.length, is(3));
+        assertThat(planes[0].getBuffer().remaining(), is(8));
+        assertThat(planes[0].getBuffer().get(5), is((byte) 5));
+        // NV21 stores V first, then U
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        assertThat(planes[1].getPixelStride(), is(2));
+        assertThat(u.get(0), is((byte) 9));
+        assertThat(u.get(2), is((byte) 11));
+        assertThat(v.get(0), is((byte) 8));
+        assertThat(v.get(2), is((byte) 10));
+        assertThat(planar.getTimestamp(), is(42L));
+        planar.close();
+        assertThat(frame.mInUse, is(false));
+    }
+
+    @Test
+    public void testMetadataFollowsFrame() {
+        FramePool pool = new FramePool(1);
+        pool.configure(4, 2);
+        Frame frame = pool.acquire();
+        frame.getMetadata().set(7L, 2, 100L, 150L, 20L);
+        PlanarFrame planar = new PlanarFrame(frame, frame.getMetadata().getTimestamp());
+        FrameMetadata metadata = planar.getMetadata();
+        assertThat(metadata.getSequenceNumber(), is(7L));
+        assertThat(metadata.getDroppedFrameCount(), is(2));
+        assertThat(metadata.getTimestamp(), is(100L));
+        assertThat(metadata.getArrivalNanos(), is(150L));
+        assertThat(metadata.getConversionNanos(), is(20L));
+        assertThat(planar.getTimestamp(), is(100L));
+        planar.close();
+    }
+
+}
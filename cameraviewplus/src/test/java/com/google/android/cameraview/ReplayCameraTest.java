@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.view.Surface;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReplayCameraTest {
+
+    private static final PreviewImpl NO_PREVIEW = new PreviewImpl() {
+        @Override
+        Surface getSurface() {
+            return null;
+        }
+
+        @Override
+        View getView() {
+            return null;
+        }
+
+        @Override
+        Class getOutputClass() {
+            return null;
+        }
+
+        @Override
+        void setDisplayOrientation(int displayOrientation) {
+        }
+
+        @Override
+        boolean isReady() {
+            return false;
+        }
+    };
+
+    private File mFile;
+
+    private FrameRecording mRecording;
+
+    private final List<long[]> mReceived = new ArrayList<>();
+
+    private final CameraViewImpl.OnFrameAvailableListener mListener =
+            new CameraViewImpl.OnFrameAvailableListener() {
+                @Override
+                public void onFrameAvailable(Frame frame) {
+                    FrameMetadata metadata = frame.getMetadata();
+                    synchronized (mReceived) {
+                        mReceived.add(new long[]{metadata.getSequenceNumber(),
+                                metadata.getTimestamp(), frame.getData()[0],
+                                frame.getData()[frame.getData().length - 1],
+                                frame.getData().length});
+                    }
+                    frame.release();
+                }
+            };
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("frames", ".raw");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mRecording != null) mRecording.close();
+        mFile.delete();
+    }
+
+    private ReplayCamera replay(int count, int format) throws IOException {
+        FrameRecordingTest.record(mFile, count, 4, 2, format, 0);
+        mRecording = new FrameRecording(mFile);
+        ReplayCamera camera = new ReplayCamera(NO_PREVIEW, mRecording);
+        camera.setRealTime(false);
+        camera.setFrameDeliveryPolicy(FrameDeliveryPolicy.blockProducer());
+        camera.setOnFrameAvailableListener(mListener);
+        return camera;
+    }
+
+    @Test
+    public void testPlaysEveryFrameInOrder() throws Exception {
+        ReplayCamera camera = replay(20, Constants.FRAME_FORMAT_NV21);
+        assertThat(camera.start(), is(true));
+        assertThat(camera.isCameraOpened(), is(true));
+        assertThat(camera.getFrameSize().getWidth(), is(4));
+        assertThat(camera.awaitCompletion(5000), is(true));
+        camera.stop();
+        assertThat(camera.isCameraOpened(), is(false));
+        assertThat(mReceived.size(), is(20));
+        for (int i = 0; i < 20; i++) {
+            long[] frame = mReceived.get(i);
+            assertThat(frame[0], is((long) i));
+            assertThat(frame[1], is(i * 33000000L));
+            assertThat(frame[2], is((long) i));
+            assertThat(frame[4], is(12L));
+        }
+        assertThat(camera.getDeliveredFrameCount(), is(20L));
+        assertThat(camera.getDroppedFrameCount(), is(0L));
+    }
+
+    @Test
+    public void testConvertsToTheFrameFormat() throws Exception {
+        ReplayCamera camera = replay(2, Constants.FRAME_FORMAT_LUMA);
+        camera.start();
+        camera.awaitCompletion(5000);
+        camera.stop();
+        assertThat(mReceived.size(), is(2));
+        // Luma from the recording, gray chroma
+        assertThat(mReceived.get(1)[2], is(1L));
+        assertThat(mReceived.get(1)[3], is((long) (byte) 128));
+        assertThat(mReceived.get(1)[4], is(12L));
+    }
+
+    @Test
+    public void testRecordedPace() throws Exception {
+        ReplayCamera camera = replay(4, Constants.FRAME_FORMAT_LUMA);
+        camera.setRealTime(true);
+        camera.setFrameFormat(Constants.FRAME_FORMAT_LUMA);
+        long start = System.nanoTime();
+        camera.start();
+        assertThat(camera.awaitCompletion(5000), is(true));
+        long elapsed = System.nanoTime() - start;
+        camera.stop();
+        assertThat(mReceived.size(), is(4));
+        assertThat(elapsed >= 99000000L, is(true));
+    }
+
+    @Test
+    public void testLoopingCarriesTimestampsOn() throws Exception {
+        ReplayCamera camera = replay(3, Constants.FRAME_FORMAT_LUMA);
+        camera.setFrameFormat(Constants.FRAME_FORMAT_LUMA);
+        camera.setLooping(true);
+        camera.start();
+        while (true) {
+            synchronized (mReceived) {
+                if (mReceived.size() >= 7) break;
+            }
+            Thread.sleep(1);
+        }
+        camera.stop();
+        // 66 ms per pass plus one 33 ms interval
+        assertThat(mReceived.get(3)[1], is(99000000L));
+        assertThat(mReceived.get(6)[1], is(198000000L));
+        assertThat(mReceived.get(6)[2], is(0L));
+    }
+
+    @Test
+    public void testDirectFrames() throws Exception {
+        FrameRecordingTest.record(mFile, 3, 4, 2, Constants.FRAME_FORMAT_NV21, 0);
+        mRecording = new FrameRecording(mFile);
+        ReplayCamera camera = new ReplayCamera(NO_PREVIEW, mRecording);
+        camera.setRealTime(false);
+        camera.setDirectFrames(true);
+        camera.setFrameDeliveryPolicy(FrameDeliveryPolicy.blockProducer());
+        camera.setOnFrameAvailableListener(new CameraViewImpl.OnFrameAvailableListener() {
+            @Override
+            public void onFrameAvailable(Frame frame) {
+                synchronized (mReceived) {
+                    mReceived.add(new long[]{frame.isDirect() ? 1 : 0,
+                            frame.getBuffer().get(11)});
+                }
+                frame.release();
+            }
+        });
+        camera.start();
+        camera.awaitCompletion(5000);
+        camera.stop();
+        assertThat(mReceived.size(), is(3));
+        assertThat(mReceived.get(2)[0], is(1L));
+        assertThat(mReceived.get(2)[1], is(2L));
+    }
+
+    @Test
+    public void testShutterLatency() throws Exception {
+        ReplayCamera camera = replay(1, Constants.FRAME_FORMAT_NV21);
+        assertThat(camera.getShutterLatencyNanos(), is(-1L));
+        camera.onShutterPressed();
+        Thread.sleep(5);
+        camera.onCaptureStarted();
+        long latency = camera.getShutterLatencyNanos();
+        assertThat(latency >= 5000000L, is(true));
+        // Later shots of the same press do not count
+        camera.onCaptureStarted();
+        assertThat(camera.getShutterLatencyNanos(), is(latency));
+    }
+
+    @Test
+    public void testRefusedPictureIsReportedToItsListener() throws Exception {
+        ReplayCamera camera = replay(1, Constants.FRAME_FORMAT_NV21);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        camera.takePicture(mFile, new CameraViewImpl.OnPictureSavedListener() {
+            @Override
+            public void onPictureSaved(int rotationDegrees) {
+                done.countDown();
+            }
+
+            @Override
+            public void onPictureSaveFailed(Exception e) {
+                failure.set(e);
+                done.countDown();
+            }
+        });
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(failure.get() instanceof UnsupportedOperationException, is(true));
+        // Nothing is left to catch a later picture
+        assertThat(camera.hasPendingPicture(), is(false));
+    }
+
+    @Test
+    public void testPicturesGoWhereTheyWereAskedFor() throws Exception {
+        ReplayCamera camera = replay(1, Constants.FRAME_FORMAT_NV21);
+        final List<Object> results = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(2);
+        CameraViewImpl.OnPictureSavedListener listener = new CameraViewImpl.OnPictureSavedListener() {
+            @Override
+            public void onPictureSaved(int rotationDegrees) {
+                synchronized (results) {
+                    results.add(rotationDegrees);
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onPictureSaveFailed(Exception e) {
+                synchronized (results) {
+                    results.add(e);
+                }
+                done.countDown();
+            }
+        };
+        camera.acceptPicture(new PictureWriter(mFile, listener));
+        camera.acceptPicture(null);
+        camera.acceptPicture(new PictureWriter(mFile, listener));
+        assertThat(camera.savePicture(ByteBuffer.allocate(4), null), is(true));
+        // The second picture is for the picture listeners
+        assertThat(camera.savePicture(ByteBuffer.allocate(4), null), is(false));
+        camera.dropPictures(new IllegalStateException());
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(camera.hasPendingPicture(), is(false));
+        assertThat(results.get(0) instanceof Integer, is(true));
+        assertThat(results.get(1) instanceof IllegalStateException, is(true));
+    }
+
+    @Test
+    public void testUnknownFrameFormatIsIgnored() throws Exception {
+        ReplayCamera camera = replay(1, Constants.FRAME_FORMAT_NV21);
+        camera.setFrameFormat(Constants.FRAME_FORMAT_LUMA);
+        camera.setFrameFormat(42);
+        assertThat(camera.getFrameFormat(), is(Constants.FRAME_FORMAT_LUMA));
+    }
+
+    @Test
+    public void testEmptyRecordingDoesNotStart() throws Exception {
+        ReplayCamera camera = replay(0, Constants.FRAME_FORMAT_NV21);
+        assertThat(camera.start(), is(false));
+        assertThat(camera.isCameraOpened(), is(false));
+    }
+
+}
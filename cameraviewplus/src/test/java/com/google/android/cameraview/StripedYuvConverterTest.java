@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class StripedYuvConverterTest {
+
+    /**
+     * Planes laid out the way camera HALs commonly do: padded rows, and U and V interleaved in
+     * one buffer with a pixel stride of 2.
+     */
+    private static class Planes {
+
+        final int mWidth;
+        final int mHeight;
+        final ByteBuffer[] mBuffers = new ByteBuffer[3];
+        final int[] mRowStrides = new int[3];
+        final int[] mPixelStrides = new int[3];
+
+        Planes(int width, int height, long seed) {
+            mWidth = width;
+            mHeight = height;
+            Random random = new Random(seed);
+            int lumaStride = (width + 63) / 64 * 64;
+            byte[] luma = new byte[lumaStride * (height - 1) + width];
+            random.nextBytes(luma);
+            byte[] chroma = new byte[lumaStride * (height / 2 - 1) + width];
+            random.nextBytes(chroma);
+            mBuffers[0] = ByteBuffer.allocateDirect(luma.length);
+            mBuffers[0].put(luma).clear();
+            ByteBuffer chromaBuffer = ByteBuffer.allocateDirect(chroma.length);
+            chromaBuffer.put(chroma).clear();
+            mBuffers[1] = chromaBuffer;
+            chromaBuffer.position(1);
+            mBuffers[2] = chromaBuffer.slice();
+            chromaBuffer.position(0);
+            mRowStrides[0] = lumaStride;
+            mPixelStrides[0] = 1;
+            for (int i = 1; i < 3; i++) {
+                mRowStrides[i] = lumaStride;
+                mPixelStrides[i] = 2;
+            }
+        }
+
+        void convertSerially(byte[] output, byte[][] pyramid) {
+            byte[] rowData = new byte[mRowStrides[0]];
+            for (int i = 0; i < 3; i++) {
+                Utils.convertPlaneRows(mBuffers[i], mRowStrides[i], mPixelStrides[i], i, 0, 0,
+                        mWidth, mHeight, 0, mHeight, output, rowData, pyramid, null);
+            }
+        }
+
+        void convert(StripedYuvConverter converter, byte[] output, byte[][] pyramid) {
+            converter.convert(mBuffers, mRowStrides, mPixelStrides, 3, 0, 0, mWidth, mHeight,
+                    output, pyramid);
+        }
+
+    }
+
+    private static byte[][] pyramid(int width, int height, int levels) {
+        byte[][] pyramid = new byte[levels][];
+        for (int i = 0; i < levels; i++) {
+            pyramid[i] = new byte[(width >> (i + 1)) * (height >> (i + 1))];
+        }
+        return pyramid;
+    }
+
+    @Test
+    public void testConvert_matchesSerial() {
+        Planes planes = new Planes(640, 482, 1);
+        byte[] expected = new byte[Frame.nv21Size(640, 482)];
+        planes.convertSerially(expected, null);
+        for (int stripes = 1; stripes <= 7; stripes++) {
+            byte[] output = new byte[expected.length];
+            planes.convert(new StripedYuvConverter(stripes), output, null);
+            assertThat(output, is(expected));
+        }
+    }
+
+    @Test
+    public void testConvert_pyramid() {
+        Planes planes = new Planes(640, 480, 2);
+        byte[] expected = new byte[Frame.nv21Size(640, 480)];
+        byte[][] expectedPyramid = pyramid(640, 480, 3);
+        planes.convertSerially(expected, expectedPyramid);
+        byte[] output = new byte[expected.length];
+        byte[][] outputPyramid = pyramid(640, 480, 3);
+        planes.convert(new StripedYuvConverter(5), output, outputPyramid);
+        assertThat(output, is(expected));
+        assertThat(outputPyramid, is(expectedPyramid));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testConvert_failurePropagates() {
+        Planes planes = new Planes(64, 64, 3);
+        planes.convert(new StripedYuvConverter(4), new byte[10], null);
+    }
+
+    /**
+     * The benchmark's setup at a fraction of its size: the default stripe count, with the
+     * chroma planes as the benchmark has them.
+     */
+    @Test
+    public void testConvert_defaultStripesMatchSerial() {
+        Planes planes = new Planes(384, 216, 4);
+        byte[] serial = new byte[Frame.nv21Size(384, 216)];
+        byte[] striped = new byte[serial.length];
+        planes.convertSerially(serial, null);
+        planes.convert(new StripedYuvConverter(), striped, null);
+        assertThat(striped, is(serial));
+    }
+
+    /**
+     * Prints the time per 4K frame, serial against striped. Runs with {@code -Pbenchmarks}
+     * only.
+     */
+    @Test
+    public void testBenchmark_4k() {
+        assumeTrue(Boolean.getBoolean("cameraview.benchmarks"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cores > 1);
+        Planes planes = new Planes(3840, 2160, 4);
+        byte[] serial = new byte[Frame.nv21Size(3840, 2160)];
+        byte[] striped = new byte[serial.length];
+        StripedYuvConverter converter = new StripedYuvConverter();
+        int iterations = 30;
+        for (int i = 0; i < 10; i++) {
+            planes.convertSerially(serial, null);
+            planes.convert(converter, striped, null);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            planes.convertSerially(serial, null);
+        }
+        long serialNanos = (System.nanoTime() - start) / iterations;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            planes.convert(converter, striped, null);
+        }
+        long stripedNanos = (System.nanoTime() - start) / iterations;
+        System.out.println(String.format("4K NV21 conversion: serial %.2f ms, %d stripes %.2f ms (%.1fx)",
+                serialNanos / 1e6, converter.getStripeCount(), stripedNanos / 1e6,
+                (double) serialNanos / stripedNanos));
+        assertThat(striped, is(serial));
+    }
+
+}
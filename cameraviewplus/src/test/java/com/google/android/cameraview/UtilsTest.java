@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class UtilsTest {
+
+    @Test
+    public void testCopyPlane_packed() {
+        // 2x2 pixels in rows of 4 bytes
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 0, 0, 3, 4});
+        byte[] output = new byte[4];
+        Utils.copyPlane(buffer, 0, 4, 1, 2, 2, output, 0, 1, new byte[4]);
+        assertThat(output, is(new byte[]{1, 2, 3, 4}));
+    }
+
+    @Test
+    public void testCopyPlane_interleaved() {
+        // 2x2 chroma samples with a pixel stride of 2, written into every other byte
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 9, 2, 9, 0, 3, 9, 4});
+        byte[] output = new byte[8];
+        Utils.copyPlane(buffer, 0, 5, 2, 2, 2, output, 1, 2, new byte[5]);
+        assertThat(output, is(new byte[]{0, 1, 0, 2, 0, 3, 0, 4}));
+    }
+
+    @Test
+    public void testCopyPlane_position() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{9, 9, 1, 2, 9, 9, 3, 4});
+        byte[] output = new byte[4];
+        Utils.copyPlane(buffer, 2, 4, 1, 2, 2, output, 0, 1, new byte[4]);
+        assertThat(output, is(new byte[]{1, 2, 3, 4}));
+    }
+
+    @Test
+    public void testCopyPlane_direct() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{9, 9, 1, 2, 9, 9, 3, 4});
+        ByteBuffer output = ByteBuffer.allocateDirect(5);
+        Utils.copyPlane(buffer, 2, 4, 1, 2, 2, output, 1, null);
+        byte[] result = new byte[5];
+        output.clear();
+        output.get(result);
+        assertThat(result, is(new byte[]{0, 1, 2, 3, 4}));
+        assertThat(buffer.position(), is(0));
+    }
+
+    @Test
+    public void testCopyPlane_directStrided() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 9, 2, 9, 0, 3, 9, 4});
+        ByteBuffer output = ByteBuffer.allocateDirect(4);
+        Utils.copyPlane(buffer, 0, 5, 2, 2, 2, output, 0, new byte[3]);
+        byte[] result = new byte[4];
+        output.clear();
+        output.get(result);
+        assertThat(result, is(new byte[]{1, 2, 3, 4}));
+    }
+
+    @Test
+    public void testInterleaveChroma() {
+        // 2x2 chroma samples with a pixel stride of 2; V and U share one buffer, as on most
+        // devices, so each plane sees the other's samples in between its own
+        ByteBuffer v = ByteBuffer.wrap(new byte[]{1, 11, 2, 12, 0, 3, 13, 4, 14});
+        ByteBuffer u = ByteBuffer.wrap(new byte[]{11, 2, 12, 0, 0, 13, 4, 14, 0});
+        ByteBuffer output = ByteBuffer.allocateDirect(10);
+        Utils.interleaveChroma(v, u, 0, 5, 2, 2, 2, output, 2, new byte[10]);
+        byte[] result = new byte[10];
+        output.clear();
+        output.get(result);
+        assertThat(result, is(new byte[]{0, 0, 1, 11, 2, 12, 3, 13, 4, 14}));
+    }
+
+    @Test
+    public void testBuildPyramid() {
+        // 4x5 pixels; the odd last row has no partner and is left out of level 1
+        byte[] luma = new byte[]{
+                0, 4, 8, 8,
+                4, 4, 8, 8,
+                (byte) 200, (byte) 200, 10, 10,
+                (byte) 200, (byte) 204, 10, 11,
+                1, 1, 1, 1};
+        byte[][] pyramid = new byte[][]{new byte[4], new byte[1]};
+        Utils.buildPyramid(luma, 4, 5, pyramid);
+        assertThat(pyramid[0], is(new byte[]{3, 8, (byte) 201, 10}));
+        assertThat(pyramid[1], is(new byte[]{56}));
+    }
+
+    @Test
+    public void testCopyPlane_pyramid() {
+        byte[] plane = new byte[8 * 8];
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = (byte) (i * 7);
+        }
+        byte[] output = new byte[plane.length];
+        byte[][] fused = new byte[][]{new byte[16], new byte[4], new byte[1]};
+        Utils.copyPlane(ByteBuffer.wrap(plane), 0, 8, 1, 8, 8, output, 0, 1, new byte[8], fused);
+        byte[][] separate = new byte[][]{new byte[16], new byte[4], new byte[1]};
+        Utils.buildPyramid(plane, 8, 8, separate);
+        assertThat(fused, is(separate));
+    }
+
+    @Test
+    public void testPreparePyramid_clampsToFrameSize() {
+        FramePool pool = new FramePool(1);
+        pool.configure(8, 2);
+        Frame frame = pool.acquire();
+        assertThat(frame.preparePyramid(3).length, is(1));
+        assertThat(frame.getPyramidLevelCount(), is(1));
+        assertThat(frame.getPyramidLevel(1).length, is(4));
+        assertThat(frame.getPyramidLevel(0), is(frame.getData()));
+    }
+
+    @Test
+    public void testPreparePyramidLazily() {
+        FramePool pool = new FramePool(1);
+        pool.configure(2, 2);
+        Frame frame = pool.acquire();
+        System.arraycopy(new byte[]{2, 4, 6, 8}, 0, frame.getData(), 0, 4);
+        frame.preparePyramidLazily(1);
+        assertThat(frame.getPyramidLevel(1), is(new byte[]{5}));
+    }
+
+}
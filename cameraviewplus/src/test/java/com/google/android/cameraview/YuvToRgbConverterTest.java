@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+public class YuvToRgbConverterTest {
+
+    /**
+     * A 4x2 gray frame whose luma values are 10, 20, ... 80, row by row.
+     */
+    private static byte[] grayFrame() {
+        byte[] nv21 = new byte[Frame.nv21Size(4, 2)];
+        for (int i = 0; i < 8; i++) {
+            nv21[i] = (byte) ((i + 1) * 10);
+        }
+        for (int i = 8; i < nv21.length; i++) {
+            nv21[i] = (byte) 128;
+        }
+        return nv21;
+    }
+
+    private static int[] convert(int degrees, boolean mirror, int scale) {
+        int[] output = new int[YuvToRgbConverter.getOutputWidth(4, 2, degrees, scale)
+                * YuvToRgbConverter.getOutputHeight(4, 2, degrees, scale)];
+        YuvToRgbConverter.nv21ToArgb(grayFrame(), 4, 2, degrees, mirror, scale, output);
+        return output;
+    }
+
+    private static int[] gray(int... values) {
+        int[] argb = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            int v = values[i];
+            argb[i] = 0xff000000 | (v << 16) | (v << 8) | v;
+        }
+        return argb;
+    }
+
+    @Test
+    public void testRotation0() {
+        assertThat(convert(0, false, 1), is(gray(10, 20, 30, 40, 50, 60, 70, 80)));
+    }
+
+    @Test
+    public void testRotation90() {
+        assertThat(YuvToRgbConverter.getOutputWidth(4, 2, 90, 1), is(2));
+        assertThat(convert(90, false, 1), is(gray(50, 10, 60, 20, 70, 30, 80, 40)));
+    }
+
+    @Test
+    public void testRotation180() {
+        assertThat(convert(180, false, 1), is(gray(80, 70, 60, 50, 40, 30, 20, 10)));
+    }
+
+    @Test
+    public void testRotation270() {
+        assertThat(convert(270, false, 1), is(gray(40, 80, 30, 70, 20, 60, 10, 50)));
+        assertThat(convert(-90, false, 1), is(convert(270, false, 1)));
+    }
+
+    @Test
+    public void testMirror() {
+        assertThat(convert(0, true, 1), is(gray(40, 30, 20, 10, 80, 70, 60, 50)));
+        // Mirrored, then rotated
+        assertThat(convert(90, true, 1), is(gray(80, 40, 70, 30, 60, 20, 50, 10)));
+    }
+
+    @Test
+    public void testScale() {
+        assertThat(convert(0, false, 2), is(gray(10, 30)));
+        assertThat(convert(90, false, 2), is(gray(10, 30)));
+    }
+
+    @Test
+    public void testColors() {
+        // Full range BT.601 red, green and blue
+        assertColor(YuvToRgbConverter.toArgb(76, 85 - 128, 255 - 128), 0xffff0000);
+        assertColor(YuvToRgbConverter.toArgb(150, 44 - 128, 21 - 128), 0xff00ff00);
+        assertColor(YuvToRgbConverter.toArgb(29, 255 - 128, 107 - 128), 0xff0000ff);
+    }
+
+    private static void assertColor(int actual, int expected) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            int a = (actual >> shift) & 0xff;
+            int e = (expected >> shift) & 0xff;
+            assertTrue(Integer.toHexString(actual), Math.abs(a - e) <= 2);
+        }
+    }
+
+    private static Frame randomFrame(int width, int height) {
+        FramePool pool = new FramePool(1);
+        pool.configure(width, height);
+        Frame frame = pool.acquire();
+        new Random(width).nextBytes(frame.getData());
+        return frame;
+    }
+
+    @Test
+    public void testPlanar_matchesNv21() {
+        Frame frame = randomFrame(16, 8);
+        for (int degrees = 0; degrees < 360; degrees += 90) {
+            int size = 16 * 8 / 4;
+            int[] expected = new int[size];
+            YuvToRgbConverter.nv21ToArgb(frame.getData(), 16, 8, degrees, true, 2, expected);
+            int[] output = new int[size];
+            YuvToRgbConverter.planarToArgb(new PlanarFrame(frame, 0), degrees, true, 2, output);
+            assertThat(output, is(expected));
+        }
+    }
+
+    @Test
+    public void testIntBuffer() {
+        Frame frame = randomFrame(16, 8);
+        int[] expected = new int[16 * 8];
+        YuvToRgbConverter.nv21ToArgb(frame.getData(), 16, 8, 90, false, 1, expected);
+        IntBuffer direct = ByteBuffer.allocateDirect(4 * (expected.length + 1))
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        direct.position(1);
+        YuvToRgbConverter.nv21ToArgb(frame.getData(), 16, 8, 90, false, 1, direct);
+        assertThat(direct.position(), is(1));
+        for (int i = 0; i < expected.length; i++) {
+            assertThat(direct.get(i + 1), is(expected[i]));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRotation() {
+        convert(45, false, 1);
+    }
+
+    /**
+     * Prints the time to turn a 1080p frame into an upright bitmap-sized ARGB image. Runs with
+     * {@code -Pbenchmarks} only.
+     */
+    @Test
+    public void testBenchmark_1080p() {
+        assumeTrue(Boolean.getBoolean("cameraview.benchmarks"));
+        Frame frame = randomFrame(1920, 1080);
+        int[] output = new int[1920 * 1080];
+        for (int i = 0; i < 10; i++) {
+            YuvToRgbConverter.nv21ToArgb(frame.getData(), 1920, 1080, 90, false, 1, output);
+        }
+        int iterations = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            YuvToRgbConverter.nv21ToArgb(frame.getData(), 1920, 1080, 90, false, 1, output);
+        }
+        long rotated = (System.nanoTime() - start) / iterations;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            YuvToRgbConverter.nv21ToArgb(frame.getData(), 1920, 1080, 90, false, 2, output);
+        }
+        long halved = (System.nanoTime() - start) / iterations;
+        System.out.println(String.format("1080p NV21 to ARGB rotated 90: %.2f ms, at half size: %.2f ms",
+                rotated / 1e6, halved / 1e6));
+    }
+
+}
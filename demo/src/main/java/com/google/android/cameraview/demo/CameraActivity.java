@@ -29,13 +29,13 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
-import android.support.v8.renderscript.RenderScript;
 import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
 
 import com.google.android.cameraview.CameraView;
 import com.google.android.cameraview.CameraViewImpl;
+import com.google.android.cameraview.YuvToRgbConverter;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -45,11 +45,8 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.concurrent.Callable;
 
-import io.github.silvaren.easyrs.tools.Nv21Image;
 import io.reactivex.Observable;
-import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
 import io.reactivex.schedulers.Schedulers;
@@ -65,9 +62,10 @@ public class CameraActivity extends AppCompatActivity {
     View captureButton;
     View turnButton;
 
-    private RenderScript rs;
-
-    private boolean frameIsProcessing = false;
+    /**
+     * Reused by every preview frame; only touched on the frame listener thread.
+     */
+    private int[] framePixels = new int[0];
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -92,8 +90,6 @@ public class CameraActivity extends AppCompatActivity {
                 cameraView.switchCamera();
             }
         });
-
-        rs = RenderScript.create(this);
     }
 
     @Override
@@ -161,41 +157,22 @@ public class CameraActivity extends AppCompatActivity {
                 Toast.makeText(CameraActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
             }
         });
+        // Frames are only let through as fast as onFrame() returns, so no frame piles up
+        cameraView.setAdaptiveAnalysisFrameRate(true);
         cameraView.setOnFrameListener(new CameraViewImpl.OnFrameListener() {
             @Override
             public void onFrame(final byte[] data, final int width, final int height, int rotationDegrees) {
-                if (frameIsProcessing) return;
-                frameIsProcessing = true;
-                Observable.fromCallable(new Callable<Bitmap>() {
-                    @Override
-                    public Bitmap call() throws Exception {
-                        return Nv21Image.nv21ToBitmap(rs, data, width, height);
-                    }
-                }).subscribeOn(Schedulers.io())
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .subscribe(new Observer<Bitmap>() {
-                            @Override
-                            public void onSubscribe(Disposable d) {
-
-                            }
-
-                            @Override
-                            public void onNext(Bitmap frameBitmap) {
-                                if (frameBitmap != null) {
-                                    Log.i("onFrame", frameBitmap.getWidth() + ", " + frameBitmap.getHeight());
-                                }
-                            }
-
-                            @Override
-                            public void onError(Throwable e) {
-
-                            }
-
-                            @Override
-                            public void onComplete() {
-                                frameIsProcessing = false;
-                            }
-                        });
+                // Already on a background thread; do the work here so its time is measured
+                boolean mirror = cameraView.getFacing() == CameraView.FACING_FRONT;
+                int frameWidth = YuvToRgbConverter.getOutputWidth(width, height, -rotationDegrees, 2);
+                int frameHeight = YuvToRgbConverter.getOutputHeight(width, height, -rotationDegrees, 2);
+                if (framePixels.length != frameWidth * frameHeight) {
+                    framePixels = new int[frameWidth * frameHeight];
+                }
+                // Upright, mirrored like the preview for the front camera, at half size
+                YuvToRgbConverter.nv21ToArgb(data, width, height, -rotationDegrees, mirror, 2, framePixels);
+                Bitmap frameBitmap = Bitmap.createBitmap(framePixels, frameWidth, frameHeight, Bitmap.Config.ARGB_8888);
+                Log.i("onFrame", frameBitmap.getWidth() + ", " + frameBitmap.getHeight());
             }
         });
     }